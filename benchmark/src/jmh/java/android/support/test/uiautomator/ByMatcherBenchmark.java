@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the {@link UiNodeMatcher} that {@link ByMatcher} searches with, over a
+ * {@link SyntheticHierarchy}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ByMatcherBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int mSize;
+
+    @Param({SyntheticHierarchy.BALANCED, SyntheticHierarchy.DEEP, SyntheticHierarchy.WIDE})
+    public String mShape;
+
+    private UiNode mRoot;
+
+    private final BySelector mResourceName = By.res(SyntheticHierarchy.PACKAGE, "title");
+    private final BySelector mTextRegex = By.text(Pattern.compile("Item 9.*"));
+    private final BySelector mHasChild = By.clazz("android.widget.LinearLayout")
+            .hasChild(By.checkable(true).checked(true));
+    private final BySelector mDepthBound = By.pkg(SyntheticHierarchy.PACKAGE).depth(0, 3);
+    private final BySelector[] mBatch = { mResourceName, mTextRegex, mHasChild };
+
+    @Setup
+    public void setUp() {
+        mRoot = SyntheticHierarchy.build(mSize, mShape);
+    }
+
+    @Benchmark
+    public List<UiNode> findAllByResourceName() {
+        return new UiNodeMatcher(mResourceName, false).findMatches(mRoot);
+    }
+
+    @Benchmark
+    public List<UiNode> findFirstByResourceName() {
+        return new UiNodeMatcher(mResourceName, true).findMatches(mRoot);
+    }
+
+    @Benchmark
+    public List<UiNode> findAllByTextRegex() {
+        return new UiNodeMatcher(mTextRegex, false).findMatches(mRoot);
+    }
+
+    @Benchmark
+    public List<UiNode> findAllWithChildSelector() {
+        return new UiNodeMatcher(mHasChild, false).findMatches(mRoot);
+    }
+
+    @Benchmark
+    public List<UiNode> findAllWithinDepth() {
+        return new UiNodeMatcher(mDepthBound, false).findMatches(mRoot);
+    }
+
+    /** Searches for the selectors of the other benchmarks one at a time. */
+    @Benchmark
+    public int findAllSeparately() {
+        int count = 0;
+        for (BySelector selector : mBatch) {
+            count += new UiNodeMatcher(selector, false).findMatches(mRoot).size();
+        }
+        return count;
+    }
+
+    /** Searches for the selectors of the other benchmarks in a single traversal. */
+    @Benchmark
+    public List<List<UiNode>> findAllInOnePass() {
+        return new UiNodeMatcher(mBatch, false).findAllMatches(mRoot);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.kxml2.io.KXmlSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the XML and binary hierarchy dumps of a {@link SyntheticHierarchy}. The XML dump uses
+ * KXmlSerializer, the same serializer that {@code android.util.Xml} returns on the device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HierarchyDumperBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    @Param({"1000", "10000", "100000"})
+    public int mSize;
+
+    @Param({SyntheticHierarchy.BALANCED, SyntheticHierarchy.DEEP, SyntheticHierarchy.WIDE})
+    public String mShape;
+
+    private UiNode[] mRoots;
+    private byte[] mBinaryDump;
+
+    @Setup
+    public void setUp() throws IOException {
+        mRoots = new UiNode[] { SyntheticHierarchy.build(mSize, mShape) };
+        mBinaryDump = binary().toByteArray();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream xml() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AccessibilityNodeInfoDumper.dumpWindowHierarchy(new KXmlSerializer(), out, mRoots, 0,
+                WIDTH, HEIGHT);
+        return out;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream binary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryHierarchyDumper.dumpWindowHierarchy(out, mRoots, 0, WIDTH, HEIGHT);
+        return out;
+    }
+
+    /** The host-side conversion of a binary dump back to XML. */
+    @Benchmark
+    public StringWriter binaryToXml() throws IOException {
+        StringWriter out = new StringWriter();
+        BinaryHierarchyFormat.toXml(new ByteArrayInputStream(mBinaryDump), out);
+        return out;
+    }
+}
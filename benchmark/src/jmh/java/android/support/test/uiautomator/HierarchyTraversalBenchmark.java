@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures a full traversal of a {@link SyntheticHierarchy} which checks every node against the
+ * kinds of criteria used by {@link BySelector} searches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HierarchyTraversalBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int mSize;
+
+    @Param({SyntheticHierarchy.BALANCED, SyntheticHierarchy.DEEP, SyntheticHierarchy.WIDE})
+    public String mShape;
+
+    private UiNode mRoot;
+
+    private final StringCriterion mResourceName =
+            StringCriterion.equalTo(SyntheticHierarchy.PACKAGE + ":id/title");
+    private final StringCriterion mTextContains = StringCriterion.contains("Item 9");
+    private final StringCriterion mTextRegex =
+            StringCriterion.matches(Pattern.compile("^.*Item 9.*$"));
+    private final StringCriterion mClassName =
+            StringCriterion.equalTo("android.widget.Switch");
+
+    @Setup
+    public void setUp() {
+        mRoot = SyntheticHierarchy.build(mSize, mShape);
+    }
+
+    @Benchmark
+    public int resourceName() {
+        return countMatches(mRoot, mResourceName, null);
+    }
+
+    @Benchmark
+    public int textContains() {
+        return countMatches(mRoot, null, mTextContains);
+    }
+
+    @Benchmark
+    public int textRegex() {
+        return countMatches(mRoot, null, mTextRegex);
+    }
+
+    @Benchmark
+    public int classAndResourceName() {
+        return countClassAndResourceMatches(mRoot);
+    }
+
+    private static int countMatches(UiNode node, StringCriterion res, StringCriterion text) {
+        int matches = 0;
+        if ((res == null || res.matches(node.getResourceName()))
+                && (text == null || text.matches(node.getText()))) {
+            matches++;
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            matches += countMatches(node.getChild(i), res, text);
+        }
+        return matches;
+    }
+
+    private int countClassAndResourceMatches(UiNode node) {
+        int matches = 0;
+        if (mClassName.matches(node.getClassName())
+                && mResourceName.matches(node.getResourceName())) {
+            matches++;
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            matches += countClassAndResourceMatches(node.getChild(i));
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the regular expressions that {@link BySelector} used to compile for its string
+ * criteria against the {@link StringCriterion} literal fast path. Each invocation evaluates the
+ * criteria against a set of attribute values typical of a single screen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StringCriterionBenchmark {
+
+    private static final String[] VALUES = {
+        "android.widget.FrameLayout",
+        "android.widget.LinearLayout",
+        "android.widget.TextView",
+        "android.widget.Button",
+        "com.android.settings:id/title",
+        "com.android.settings:id/summary",
+        "com.android.settings:id/switch_widget",
+        "Wi-Fi",
+        "Bluetooth",
+        "Connected devices, Bluetooth, Cast, NFC",
+        "Apps & notifications",
+        "Battery 87% - Should last until about 11:30 PM",
+        "Display, Wallpaper, sleep, font size",
+        "Storage 34% used - 42.10 GB free",
+        null,
+        "",
+    };
+
+    @Param({"equals", "startsWith", "endsWith", "contains"})
+    public String mType;
+
+    private Pattern mPattern;
+    private StringCriterion mCriterion;
+
+    @Setup
+    public void setUp() {
+        String value = "Bluetooth";
+        if ("equals".equals(mType)) {
+            mPattern = Pattern.compile(Pattern.quote(value));
+            mCriterion = StringCriterion.equalTo(value);
+        } else if ("startsWith".equals(mType)) {
+            mPattern = Pattern.compile(String.format("^%s.*$", Pattern.quote(value)));
+            mCriterion = StringCriterion.startsWith(value);
+        } else if ("endsWith".equals(mType)) {
+            mPattern = Pattern.compile(String.format("^.*%s$", Pattern.quote(value)));
+            mCriterion = StringCriterion.endsWith(value);
+        } else {
+            mPattern = Pattern.compile(String.format("^.*%s.*$", Pattern.quote(value)));
+            mCriterion = StringCriterion.contains(value);
+        }
+    }
+
+    @Benchmark
+    public int regex() {
+        int matches = 0;
+        for (String value : VALUES) {
+            if (mPattern.matcher(value != null ? value : "").matches()) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int literal() {
+        int matches = 0;
+        for (String value : VALUES) {
+            if (mCriterion.matches(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
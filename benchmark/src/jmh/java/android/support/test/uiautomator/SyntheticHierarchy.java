@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds deterministic {@link InMemoryUiNode} hierarchies for host-side benchmarks. The attribute
+ * values are modelled on a typical settings screen: a few layout classes, resource ids shared by
+ * every row of a list and mostly unique text.
+ */
+class SyntheticHierarchy {
+
+    /** Two children per node, so the hierarchy is as deep as a balanced tree can be. */
+    static final String BALANCED = "balanced";
+    /** Chains of {@link #CHAIN_LENGTH} nested layouts, like deeply wrapped content. */
+    static final String DEEP = "deep";
+    /** Many children per node, like long lists and grids. */
+    static final String WIDE = "wide";
+
+    static final String PACKAGE = "com.android.settings";
+
+    /** The number of nested layouts in each chain of a {@link #DEEP} hierarchy. */
+    static final int CHAIN_LENGTH = 500;
+
+    private static final String[] LAYOUT_CLASSES = {
+        "android.widget.FrameLayout",
+        "android.widget.LinearLayout",
+        "android.widget.RelativeLayout",
+        "android.support.v7.widget.RecyclerView",
+    };
+    private static final String[] LEAF_CLASSES = {
+        "android.widget.TextView",
+        "android.widget.ImageView",
+        "android.widget.Button",
+        "android.widget.Switch",
+    };
+    private static final String[] RESOURCE_NAMES = {
+        "title", "summary", "icon", "switch_widget", "widget_frame", "content",
+    };
+
+    private final Random mRandom = new Random(42);
+    private int mCount;
+    private int mLeafCount;
+
+    // Scratch array for reading the bounds of a parent
+    private final int[] mBounds = new int[4];
+
+    private SyntheticHierarchy() {
+    }
+
+    /**
+     * Returns the root of a hierarchy with exactly {@code size} nodes. The {@code shape} is
+     * {@link #BALANCED}, {@link #DEEP} or {@link #WIDE}.
+     */
+    static InMemoryUiNode build(int size, String shape) {
+        int fanout;
+        if (DEEP.equals(shape)) {
+            return new SyntheticHierarchy().buildChains(size);
+        } else if (BALANCED.equals(shape)) {
+            fanout = 2;
+        } else if (WIDE.equals(shape)) {
+            fanout = 50;
+        } else {
+            throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        return new SyntheticHierarchy().buildTree(size, fanout);
+    }
+
+    /** Returns the number of nodes under and including {@code root}. */
+    static int count(UiNode root) {
+        int count = 1;
+        for (int i = 0; i < root.getChildCount(); i++) {
+            count += count(root.getChild(i));
+        }
+        return count;
+    }
+
+    /** Builds the tree breadth first, so that every level is full before the next begins. */
+    private InMemoryUiNode buildTree(int size, int fanout) {
+        InMemoryUiNode root = new InMemoryUiNode(0);
+        initNode(root);
+        root.setBoundsInScreen(0, 0, 1080, 1920);
+        List<InMemoryUiNode> level = new ArrayList<InMemoryUiNode>();
+        level.add(root);
+        mCount = 1;
+        while (mCount < size) {
+            List<InMemoryUiNode> next = new ArrayList<InMemoryUiNode>();
+            for (InMemoryUiNode parent : level) {
+                parent.getBoundsInScreen(mBounds);
+                int height = Math.max(1, (mBounds[3] - mBounds[1]) / fanout);
+                for (int i = 0; i < fanout && mCount < size; i++) {
+                    InMemoryUiNode child = parent.addChild();
+                    initNode(child);
+                    int top = mBounds[1] + i * height;
+                    child.setBoundsInScreen(mBounds[0], top, mBounds[2], top + height);
+                    next.add(child);
+                    mCount++;
+                }
+            }
+            level = next;
+        }
+        for (InMemoryUiNode leaf : level) {
+            makeLeaf(leaf);
+        }
+        return root;
+    }
+
+    /**
+     * Builds chains of {@link #CHAIN_LENGTH} nested layouts under the root. Each layout in a chain
+     * also holds a leaf before the next layout, so a search has to descend the whole chain.
+     */
+    private InMemoryUiNode buildChains(int size) {
+        InMemoryUiNode root = new InMemoryUiNode(0);
+        initNode(root);
+        root.setBoundsInScreen(0, 0, 1080, 1920);
+        mCount = 1;
+        InMemoryUiNode parent = root;
+        int depth = 0;
+        while (mCount < size) {
+            if (depth == CHAIN_LENGTH) {
+                parent = root;
+                depth = 0;
+            }
+            InMemoryUiNode layout = parent.addChild();
+            initNode(layout);
+            layout.setBoundsInScreen(0, 0, 1080, 1920);
+            mCount++;
+            if (mCount < size) {
+                InMemoryUiNode leaf = layout.addChild();
+                initNode(leaf);
+                makeLeaf(leaf);
+                leaf.setBoundsInScreen(0, 0, 1080, 1920);
+                mCount++;
+            } else {
+                makeLeaf(layout);
+            }
+            parent = layout;
+            depth++;
+        }
+        return root;
+    }
+
+    private void initNode(InMemoryUiNode node) {
+        String className = LAYOUT_CLASSES[mRandom.nextInt(LAYOUT_CLASSES.length)];
+        node.setClassName(className);
+        node.setPackageName(PACKAGE);
+        if (mRandom.nextInt(4) == 0) {
+            node.setResourceName(PACKAGE + ":id/" + RESOURCE_NAMES[
+                    mRandom.nextInt(RESOURCE_NAMES.length)]);
+        }
+        boolean clickable = mRandom.nextInt(8) == 0;
+        node.setClickable(clickable);
+        node.setFocusable(clickable);
+        node.setScrollable(className.endsWith("RecyclerView"));
+    }
+
+    private void makeLeaf(InMemoryUiNode node) {
+        String className = LEAF_CLASSES[mRandom.nextInt(LEAF_CLASSES.length)];
+        node.setClassName(className);
+        node.setScrollable(false);
+        if (className.endsWith("TextView") || className.endsWith("Button")) {
+            node.setText("Item " + mLeafCount++);
+        } else if (className.endsWith("ImageView")) {
+            node.setContentDescription("Icon");
+        } else {
+            node.setCheckable(true);
+            node.setChecked(mRandom.nextBoolean());
+        }
+    }
+}
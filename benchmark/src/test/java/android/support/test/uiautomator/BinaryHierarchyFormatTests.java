@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.KXmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class BinaryHierarchyFormatTests {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        InMemoryUiNode root = new InMemoryUiNode(0).setClassName("android.widget.FrameLayout")
+                .setPackageName("com.example").setBoundsInScreen(-10, -10, 2000, 3000);
+        InMemoryUiNode list = root.addChild().setClassName("android.widget.ListView")
+                .setPackageName("com.example").setResourceName("com.example:id/list")
+                .setScrollable(true).setBoundsInScreen(0, 100, 1080, 1800);
+        for (int i = 0; i < 5; i++) {
+            InMemoryUiNode row = list.addChild().setClassName("android.widget.LinearLayout")
+                    .setPackageName("com.example").setClickable(true).setFocusable(true)
+                    .setBoundsInScreen(0, 100 + i * 200, 1080, 300 + i * 200);
+            row.addChild().setClassName("android.widget.TextView").setPackageName("com.example")
+                    .setResourceName("com.example:id/title").setText("Item " + i);
+            row.addChild().setClassName("android.widget.Switch").setPackageName("com.example")
+                    .setCheckable(true).setChecked(i % 2 == 0);
+        }
+
+        // Characters which have to be escaped, or replaced because XML cannot represent them
+        root.addChild().setClassName("android.widget.TextView").setPackageName("com.example")
+                .setText("<a href=\"x\">&amp;</a>\r\n\t\u0001\u0085\u00e9\u4e2d")
+                .setContentDescription("it's \"quoted\"").setSelected(true).setPassword(true)
+                .setLongClickable(true).setFocused(true).setEnabled(false);
+
+        // A clickable node without text, which fails the NAF check
+        root.addChild().setClassName("android.view.View").setPackageName("com.example")
+                .setClickable(true).setBoundsInScreen(5000, 5000, 5100, 5100);
+
+        InMemoryUiNode dialog = new InMemoryUiNode(0).setClassName("android.widget.FrameLayout")
+                .setPackageName("android").setBoundsInScreen(100, 500, 980, 1400);
+        dialog.addChild().setClassName("android.widget.Button").setPackageName("android")
+                .setText("OK").setClickable(true);
+
+        assertRoundTrip(new UiNode[] { root, dialog }, 1);
+    }
+
+    @Test
+    public void testRoundTripLargeHierarchy() throws Exception {
+        Random random = new Random(42);
+        String[] classes = {
+            "android.widget.FrameLayout", "android.widget.TextView", "android.widget.Button",
+        };
+        InMemoryUiNode root = new InMemoryUiNode(0);
+        List<InMemoryUiNode> nodes = new ArrayList<InMemoryUiNode>();
+        nodes.add(root);
+        for (int i = 1; i < 2000; i++) {
+            // Mostly append to recent nodes, so the hierarchy is both deep and wide
+            int parent = Math.max(0, nodes.size() - 1 - random.nextInt(10));
+            InMemoryUiNode node = nodes.get(parent).addChild()
+                    .setClassName(classes[random.nextInt(classes.length)])
+                    .setPackageName("com.example")
+                    .setClickable(random.nextBoolean())
+                    .setBoundsInScreen(random.nextInt(2000) - 500, random.nextInt(3000) - 500,
+                            random.nextInt(2000), random.nextInt(3000));
+            if (random.nextInt(3) == 0) {
+                node.setText("Text " + random.nextInt(100));
+            }
+            if (random.nextInt(4) == 0) {
+                node.setResourceName("com.example:id/r" + random.nextInt(20));
+            }
+            nodes.add(node);
+        }
+        assertRoundTrip(new UiNode[] { root }, 0);
+    }
+
+    @Test
+    public void testEmptyHierarchy() throws Exception {
+        assertRoundTrip(new UiNode[0], 3);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherData() throws Exception {
+        BinaryHierarchyFormat.toXml(new ByteArrayInputStream("<?xml".getBytes("UTF-8")),
+                new StringWriter());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsNewerVersions() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BinaryHierarchyFormat.MAGIC);
+        out.write(BinaryHierarchyFormat.VERSION + 1);
+        out.write(0);
+        out.write(0);
+        BinaryHierarchyFormat.toXml(new ByteArrayInputStream(out.toByteArray()),
+                new StringWriter());
+    }
+
+    /**
+     * Checks that converting the binary dump of {@code roots} produces the same document as the
+     * XML dumper. The documents are compared after parsing, since serializers may choose
+     * different, equivalent ways to quote and escape attribute values.
+     */
+    private static void assertRoundTrip(UiNode[] roots, int rotation) throws Exception {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        AccessibilityNodeInfoDumper.dumpWindowHierarchy(new KXmlSerializer(), xml, roots,
+                rotation, WIDTH, HEIGHT);
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryHierarchyDumper.dumpWindowHierarchy(binary, roots, rotation, WIDTH, HEIGHT);
+        Assert.assertTrue("binary dump is larger than XML", binary.size() < xml.size());
+        StringWriter converted = new StringWriter();
+        BinaryHierarchyFormat.toXml(new ByteArrayInputStream(binary.toByteArray()), converted);
+
+        List<String> expected = parse(xml.toString("UTF-8"));
+        List<String> actual = parse(converted.toString());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    /** Returns the start and end tags of {@code xml}, with their attributes in order. */
+    private static List<String> parse(String xml) throws XmlPullParserException, IOException {
+        XmlPullParser parser = new KXmlParser();
+        parser.setInput(new StringReader(xml));
+        List<String> ret = new ArrayList<String>();
+        for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT;
+                event = parser.next()) {
+            if (event == XmlPullParser.START_TAG) {
+                StringBuilder tag = new StringBuilder("<").append(parser.getName());
+                for (int i = 0; i < parser.getAttributeCount(); i++) {
+                    tag.append(' ').append(parser.getAttributeName(i)).append("=[")
+                            .append(parser.getAttributeValue(i)).append(']');
+                }
+                ret.add(tag.toString());
+            } else if (event == XmlPullParser.END_TAG) {
+                ret.add("</" + parser.getName());
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.KXmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class HierarchyDiffDumperTests {
+
+    private HierarchyDiffDumper mDumper;
+    private InMemoryUiNode mRoot;
+    private InMemoryUiNode mDialog;
+
+    @Before
+    public void setUp() {
+        mDumper = new HierarchyDiffDumper();
+        mRoot = new InMemoryUiNode(0).setClassName("android.widget.FrameLayout")
+                .setBoundsInScreen(0, 0, 1080, 1920);
+        mRoot.addChild().setText("Title").setBoundsInScreen(0, 0, 1080, 100);
+        InMemoryUiNode row = mRoot.addChild().setBoundsInScreen(0, 100, 1080, 200);
+        row.addChild().setClassName("android.widget.Switch").setCheckable(true)
+                .setBoundsInScreen(900, 100, 1080, 200);
+        mDialog = new InMemoryUiNode(0).setText("Dialog");
+    }
+
+    @Test
+    public void testFirstDumpInsertsEverything() throws Exception {
+        List<String> diff = dump(mRoot);
+        Assert.assertEquals(Arrays.asList("inserted 5:0", "inserted 5:0/0", "inserted 5:0/1",
+                "inserted 5:0/1/0"), ids(diff));
+
+        // Inserted nodes carry every attribute of the XML dump. The NAF attribute is only
+        // written for nodes which fail the check.
+        List<String> expected = new ArrayList<String>(
+                Arrays.asList(AccessibilityNodeInfoDumper.ATTRIBUTE_NAMES));
+        expected.remove("NAF");
+        expected.add(0, "id");
+        Assert.assertEquals(expected, attributeNames(diff.get(1)));
+        Assert.assertTrue(diff.get(1).contains(" text=[Title]"));
+        Assert.assertTrue(diff.get(1).contains(" bounds=[[0,0][1080,100]]"));
+    }
+
+    @Test
+    public void testUnchangedHierarchy() throws Exception {
+        dump(mRoot);
+        Assert.assertTrue(dump(mRoot).isEmpty());
+        Assert.assertTrue(dump(mRoot).isEmpty());
+    }
+
+    @Test
+    public void testChangedAttributes() throws Exception {
+        dump(mRoot);
+        mRoot.getChild(0).setText("New title");
+        mRoot.getChild(1).getChild(0).setChecked(true);
+
+        // Changed nodes only carry the attributes whose value changed
+        List<String> diff = dump(mRoot);
+        Assert.assertEquals(Arrays.asList("changed id=[5:0/0] text=[New title]",
+                "changed id=[5:0/1/0] checked=[true]"), diff);
+    }
+
+    @Test
+    public void testNafCleared() throws Exception {
+        // A clickable node without text fails the NAF check, until it is given some text
+        InMemoryUiNode button = mRoot.getChild(0).setText(null)
+                .setClassName("android.widget.ImageButton").setClickable(true);
+        Assert.assertTrue(dump(mRoot).get(1).contains(" NAF=[true]"));
+
+        button.setContentDescription("Back");
+        Assert.assertEquals(Arrays.asList(
+                "changed id=[5:0/0] NAF=[false] content-desc=[Back]"), dump(mRoot));
+    }
+
+    @Test
+    public void testRemovedAndInsertedNodes() throws Exception {
+        dump(mRoot);
+        mRoot.getChild(1).addChild().setText("Summary");
+
+        List<String> diff = dump(mRoot);
+        Assert.assertEquals(Arrays.asList("inserted 5:0/1/1"), ids(diff));
+
+        // Removed nodes are listed before any other changes
+        InMemoryUiNode root = new InMemoryUiNode(0).setClassName("android.widget.FrameLayout")
+                .setBoundsInScreen(0, 0, 1080, 1920);
+        root.addChild().setText("Title").setBoundsInScreen(0, 0, 1080, 100);
+        diff = dump(root, mDialog);
+        Assert.assertEquals(Arrays.asList("removed 5:0/1", "removed 5:0/1/0",
+                "removed 5:0/1/1", "inserted 9:0"), ids(diff));
+        Assert.assertEquals("removed id=[5:0/1]", diff.get(0));
+    }
+
+    /** Dumps the difference to {@code roots}, in windows 5 and 9, as parsed by {@link #parse}. */
+    private List<String> dump(UiNode... roots) throws Exception {
+        int[] windowIds = { 5, 9 };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mDumper.dumpWindowHierarchyDiff(new KXmlSerializer(), out, roots,
+                Arrays.copyOf(windowIds, roots.length), 0, 1080, 1920);
+
+        List<String> ret = parse(out.toString("UTF-8"));
+        Assert.assertEquals("hierarchy-diff rotation=[0]", ret.remove(0));
+        return ret;
+    }
+
+    /**
+     * Returns the elements of {@code xml}, each as its tag name followed by its attributes in
+     * order.
+     */
+    private static List<String> parse(String xml) throws Exception {
+        XmlPullParser parser = new KXmlParser();
+        parser.setInput(new StringReader(xml));
+        List<String> ret = new ArrayList<String>();
+        for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT;
+                event = parser.next()) {
+            if (event == XmlPullParser.START_TAG) {
+                StringBuilder tag = new StringBuilder(parser.getName());
+                for (int i = 0; i < parser.getAttributeCount(); i++) {
+                    tag.append(' ').append(parser.getAttributeName(i)).append("=[")
+                            .append(parser.getAttributeValue(i)).append(']');
+                }
+                ret.add(tag.toString());
+            }
+        }
+        return ret;
+    }
+
+    /** Returns the tag name and id of each element. */
+    private static List<String> ids(List<String> elements) {
+        List<String> ret = new ArrayList<String>();
+        for (String element : elements) {
+            int start = element.indexOf(" id=[") + 5;
+            ret.add(element.substring(0, element.indexOf(' ')) + " "
+                    + element.substring(start, element.indexOf(']', start)));
+        }
+        return ret;
+    }
+
+    /** Returns the name of each attribute of an element, in order. */
+    private static List<String> attributeNames(String element) {
+        List<String> ret = new ArrayList<String>();
+        for (String attribute : element.substring(element.indexOf(' ') + 1).split("\\] ")) {
+            ret.add(attribute.substring(0, attribute.indexOf("=[")));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class SelectorPlanTests {
+
+    @Test
+    public void testChildNumbering() {
+        BySelector grandchild = By.text("c");
+        BySelector selector = By.text("root")
+                .hasChild(By.text("a").hasChild(grandchild))
+                .hasDescendant(By.text("b"), 3);
+        SelectorPlan plan = selector.compile();
+
+        // Selectors are numbered in pre-order
+        Assert.assertArrayEquals(new int[] { 1, 3 }, plan.getChildren(SelectorPlan.ROOT));
+        Assert.assertArrayEquals(new int[] { 2 }, plan.getChildren(1));
+        Assert.assertArrayEquals(new int[0], plan.getChildren(2));
+        Assert.assertArrayEquals(new int[0], plan.getChildren(3));
+        Assert.assertEquals(Integer.MAX_VALUE, plan.getMaxDepth(SelectorPlan.ROOT));
+        Assert.assertEquals(1, plan.getMaxDepth(1));
+        Assert.assertEquals(3, plan.getMaxDepth(3));
+    }
+
+    @Test
+    public void testCompiledPlanIsCached() {
+        BySelector child = By.text("a");
+        BySelector selector = By.clazz("Row").hasChild(child);
+        SelectorPlan plan = selector.compile();
+        Assert.assertTrue(plan.isCurrent());
+        Assert.assertSame(plan, selector.compile());
+
+        // Modifying a child selector makes the plan stale
+        child.clickable(true);
+        Assert.assertFalse(plan.isCurrent());
+        SelectorPlan recompiled = selector.compile();
+        Assert.assertNotSame(plan, recompiled);
+        Assert.assertTrue(recompiled.isCurrent());
+        Assert.assertSame(recompiled, selector.compile());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCycleRejected() {
+        BySelector selector = By.text("a");
+        BySelector child = By.text("b");
+        selector.hasChild(child);
+        child.hasChild(selector);
+        selector.compile();
+    }
+
+    @Test
+    public void testAccept() {
+        InMemoryUiNode node = new InMemoryUiNode(0).setText("Title").setClassName("Button")
+                .setClickable(true);
+        UiNodeAttributes attributes = new UiNodeAttributes();
+        attributes.reset(node);
+
+        Assert.assertTrue(accept(By.text("Title").clickable(true), attributes, 0));
+        Assert.assertFalse(accept(By.text("Title").clickable(false), attributes, 0));
+        Assert.assertFalse(accept(By.text("Title").checked(true), attributes, 0));
+        Assert.assertTrue(accept(By.text("Title").checked(false), attributes, 0));
+        Assert.assertFalse(accept(By.text("Title").clazz("TextView"), attributes, 0));
+        Assert.assertTrue(accept(By.desc(""), attributes, 0));
+
+        // Depth bounds are relative to the root, or to the match of the parent selector
+        Assert.assertFalse(accept(By.text("Title").depth(1, 2), attributes, 0));
+        Assert.assertTrue(accept(By.text("Title").depth(1, 2), attributes, 1));
+        Assert.assertTrue(accept(By.text("Title").depth(1, 2), attributes, 2));
+        Assert.assertFalse(accept(By.text("Title").depth(1, 2), attributes, 3));
+    }
+
+    @Test
+    public void testCriteriaOrderedByCost() {
+        RecordingNode node = new RecordingNode();
+        node.setText("Title").setContentDescription("Icon").setClassName("Button")
+                .setPackageName("com.example").setResourceName("com.example:id/title")
+                .setClickable(true);
+        UiNodeAttributes attributes = new UiNodeAttributes();
+
+        // Exact matches first, resource names before the other attributes, then substrings and
+        // regular expressions
+        BySelector selector = By.clazz(Pattern.compile("But.*")).textContains("itl")
+                .descStartsWith("Ic").pkg("com.example").res("com.example:id/title")
+                .clickable(true);
+        attributes.reset(node);
+        Assert.assertTrue(selector.compile().accept(attributes, SelectorPlan.ROOT, 0));
+        Assert.assertEquals(Arrays.asList("res", "pkg", "desc", "text", "class"), node.mReads);
+
+        // Evaluation stops at the first criterion which fails
+        node.setResourceName("com.example:id/summary");
+        node.mReads.clear();
+        attributes.reset(node);
+        Assert.assertFalse(selector.compile().accept(attributes, SelectorPlan.ROOT, 0));
+        Assert.assertEquals(Arrays.asList("res"), node.mReads);
+
+        // Boolean criteria are tested before any string is read
+        node.mReads.clear();
+        attributes.reset(node);
+        selector = By.text("Title").checked(true);
+        Assert.assertFalse(selector.compile().accept(attributes, SelectorPlan.ROOT, 0));
+        Assert.assertTrue(node.mReads.isEmpty());
+    }
+
+    @Test
+    public void testAttributesReadOnce() {
+        RecordingNode node = new RecordingNode();
+        node.setText("Title");
+        UiNodeAttributes attributes = new UiNodeAttributes();
+        attributes.reset(node);
+
+        Assert.assertTrue(accept(By.text("Title"), attributes, 0));
+        Assert.assertTrue(accept(By.textStartsWith("Ti"), attributes, 0));
+        Assert.assertFalse(accept(By.text(Pattern.compile("x")), attributes, 0));
+        Assert.assertEquals(Arrays.asList("text"), node.mReads);
+    }
+
+    @Test
+    public void testExplicitCriteria() {
+        RecordingNode node = new RecordingNode();
+        node.setText("Wi-Fi settings").setClassName("TextView").setEnabled(true);
+        UiNodeAttributes attributes = new UiNodeAttributes();
+
+        // Several criteria may test the same attribute, and are still ordered by cost
+        SelectorPlan plan = SelectorPlan.forCriteria(UiNodeAttributes.FLAG_ENABLED,
+                UiNodeAttributes.FLAG_ENABLED,
+                new int[] { SelectorPlan.ATTR_TEXT, SelectorPlan.ATTR_TEXT,
+                        SelectorPlan.ATTR_CLASS },
+                new StringCriterion[] { StringCriterion.containsIgnoreCase("FI"),
+                        StringCriterion.startsWith("Wi"), StringCriterion.equalTo("TextView") });
+        Assert.assertTrue(plan.isCurrent());
+        Assert.assertArrayEquals(new int[0], plan.getChildren(SelectorPlan.ROOT));
+        attributes.reset(node);
+        Assert.assertTrue(plan.accept(attributes, SelectorPlan.ROOT, 5));
+        Assert.assertEquals(Arrays.asList("class", "text"), node.mReads);
+
+        node.setText("Wi-Fo settings");
+        attributes.reset(node);
+        Assert.assertFalse(plan.accept(attributes, SelectorPlan.ROOT, 0));
+        node.setEnabled(false).setText("Wi-Fi settings");
+        attributes.reset(node);
+        Assert.assertFalse(plan.accept(attributes, SelectorPlan.ROOT, 0));
+    }
+
+    @Test
+    public void testMissingAttributes() {
+        InMemoryUiNode node = new InMemoryUiNode(0).setText("Title");
+        UiNodeAttributes attributes = new UiNodeAttributes();
+        attributes.reset(node);
+
+        // A missing attribute reads as an empty string, unless the criterion is strict
+        int[] desc = { SelectorPlan.ATTR_DESC };
+        Assert.assertTrue(SelectorPlan.forCriteria(0, 0, desc,
+                new StringCriterion[] { StringCriterion.equalTo("") })
+                .accept(attributes, SelectorPlan.ROOT, 0));
+        Assert.assertFalse(SelectorPlan.forCriteria(0, 0, desc,
+                new StringCriterion[] { StringCriterion.equalTo("").strict() })
+                .accept(attributes, SelectorPlan.ROOT, 0));
+        Assert.assertTrue(SelectorPlan.forCriteria(0, 0, new int[] { SelectorPlan.ATTR_TEXT },
+                new StringCriterion[] { StringCriterion.contains("").strict() })
+                .accept(attributes, SelectorPlan.ROOT, 0));
+    }
+
+    private static boolean accept(BySelector selector, UiNodeAttributes node, int depth) {
+        return selector.compile().accept(node, SelectorPlan.ROOT, depth);
+    }
+
+    /** A node which records the string attributes read from it. */
+    private static class RecordingNode extends InMemoryUiNode {
+        private final List<String> mReads = new ArrayList<String>();
+
+        RecordingNode() {
+            super(0);
+        }
+
+        @Override
+        public CharSequence getText() {
+            mReads.add("text");
+            return super.getText();
+        }
+
+        @Override
+        public CharSequence getContentDescription() {
+            mReads.add("desc");
+            return super.getContentDescription();
+        }
+
+        @Override
+        public CharSequence getClassName() {
+            mReads.add("class");
+            return super.getClassName();
+        }
+
+        @Override
+        public CharSequence getPackageName() {
+            mReads.add("pkg");
+            return super.getPackageName();
+        }
+
+        @Override
+        public String getResourceName() {
+            mReads.add("res");
+            return super.getResourceName();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+public class StringCriterionTests {
+
+    private static final String[] VALUES = {
+        "", "Settings", "settings", "Wi-Fi settings", "Set", "a.b", "axb", "(Settings)",
+    };
+
+    @Test
+    public void testLiteralCriteria() {
+        Assert.assertTrue(StringCriterion.equalTo("Settings").matches("Settings"));
+        Assert.assertFalse(StringCriterion.equalTo("Settings").matches("settings"));
+        Assert.assertTrue(StringCriterion.startsWith("Wi").matches("Wi-Fi settings"));
+        Assert.assertFalse(StringCriterion.startsWith("Fi").matches("Wi-Fi settings"));
+        Assert.assertTrue(StringCriterion.endsWith("settings").matches("Wi-Fi settings"));
+        Assert.assertFalse(StringCriterion.endsWith("Wi").matches("Wi-Fi settings"));
+        Assert.assertTrue(StringCriterion.contains("Fi").matches("Wi-Fi settings"));
+        Assert.assertFalse(StringCriterion.contains("fi").matches("Wi-Fi settings"));
+        Assert.assertTrue(StringCriterion.startsWithIgnoreCase("wI").matches("Wi-Fi settings"));
+        Assert.assertTrue(StringCriterion.containsIgnoreCase("FI S").matches("Wi-Fi settings"));
+    }
+
+    @Test
+    public void testNullMatchesAsEmpty() {
+        CharSequence missing = null;
+        Assert.assertTrue(StringCriterion.equalTo("").matches(missing));
+        Assert.assertTrue(StringCriterion.contains("").matches(missing));
+        Assert.assertTrue(StringCriterion.matches(Pattern.compile(".*")).matches(missing));
+        Assert.assertFalse(StringCriterion.equalTo("a").matches(missing));
+    }
+
+    @Test
+    public void testStrictNeverMatchesNull() {
+        CharSequence missing = null;
+        Assert.assertFalse(StringCriterion.equalTo("").strict().matches(missing));
+        Assert.assertFalse(StringCriterion.containsIgnoreCase("").strict().matches(missing));
+        Assert.assertFalse(
+                StringCriterion.matches(Pattern.compile(".*")).strict().matches(missing));
+
+        // Other values match as they do without strict()
+        Assert.assertTrue(StringCriterion.equalTo("").strict().matches(""));
+        Assert.assertTrue(StringCriterion.startsWithIgnoreCase("wi").strict()
+                .matches("Wi-Fi settings"));
+        Assert.assertEquals(StringCriterion.CONTAINS,
+                StringCriterion.contains("a").strict().getType());
+    }
+
+    @Test
+    public void testRegexCharactersAreLiteral() {
+        Assert.assertTrue(StringCriterion.equalTo("a.b").matches("a.b"));
+        Assert.assertFalse(StringCriterion.equalTo("a.b").matches("axb"));
+        Assert.assertTrue(StringCriterion.contains("(Settings)").matches("(Settings)"));
+        Assert.assertFalse(StringCriterion.contains("(Settings)").matches("Settings"));
+    }
+
+    @Test
+    public void testLiteralsAgreeWithLegacyRegex() {
+        // On single line values, each literal criterion behaves exactly like the regular
+        // expression that earlier versions compiled for it
+        for (String value : VALUES) {
+            for (String candidate : VALUES) {
+                StringCriterion[] criteria = {
+                    StringCriterion.equalTo(value),
+                    StringCriterion.startsWith(value),
+                    StringCriterion.endsWith(value),
+                    StringCriterion.contains(value),
+                    StringCriterion.startsWithIgnoreCase(value),
+                    StringCriterion.containsIgnoreCase(value),
+                };
+                for (StringCriterion criterion : criteria) {
+                    boolean expected =
+                            Pattern.compile(criterion.toString()).matcher(candidate).matches();
+                    Assert.assertEquals(criterion + " on " + candidate, expected,
+                            criterion.matches(candidate));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMultiLineValues() {
+        // The legacy patterns did not match across line terminators; the literal forms do
+        String value = "Line 1\nLine 2";
+        StringCriterion[] criteria = {
+            StringCriterion.startsWith("Line 1"),
+            StringCriterion.endsWith("Line 2"),
+            StringCriterion.contains("Line"),
+        };
+        for (StringCriterion criterion : criteria) {
+            Assert.assertTrue(criterion.toString(), criterion.matches(value));
+            Assert.assertFalse(criterion.toString(),
+                    Pattern.compile(criterion.toString()).matcher(value).matches());
+        }
+
+        // Exact matches are unchanged
+        Assert.assertTrue(StringCriterion.equalTo(value).matches(value));
+        Assert.assertTrue(Pattern.compile(StringCriterion.equalTo(value).toString())
+                .matcher(value).matches());
+    }
+
+    @Test
+    public void testTypesOrderedByCost() {
+        Assert.assertTrue(StringCriterion.EQUALS < StringCriterion.STARTS_WITH);
+        Assert.assertTrue(StringCriterion.CONTAINS < StringCriterion.CONTAINS_IGNORE_CASE);
+        Assert.assertTrue(StringCriterion.CONTAINS_IGNORE_CASE < StringCriterion.REGEX);
+        Assert.assertEquals(StringCriterion.REGEX,
+                StringCriterion.matches(Pattern.compile("a")).getType());
+        Assert.assertNull(StringCriterion.matches(Pattern.compile("a")).getValue());
+        Assert.assertEquals("abc", StringCriterion.containsIgnoreCase("ABC").getValue());
+    }
+}
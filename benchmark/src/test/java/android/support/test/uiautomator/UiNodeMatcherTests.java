@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class UiNodeMatcherTests {
+
+    private static final String PKG = "com.example";
+
+    @Test
+    public void testDeepHierarchy() {
+        // Far deeper than a recursive traversal could go on a default thread stack
+        InMemoryUiNode root = chain(100000);
+        UiNode bottom = root;
+        while (bottom.getChildCount() > 0) {
+            bottom = bottom.getChild(0);
+        }
+        ((InMemoryUiNode) bottom).setText("bottom");
+
+        List<UiNode> matches = new UiNodeMatcher(By.text("bottom"), false).findMatches(root);
+        Assert.assertEquals(1, matches.size());
+        Assert.assertSame(bottom, matches.get(0));
+    }
+
+    @Test
+    public void testDeepDescendantSelector() {
+        InMemoryUiNode root = chain(2000);
+        UiNode bottom = root;
+        while (bottom.getChildCount() > 0) {
+            bottom = bottom.getChild(0);
+        }
+        ((InMemoryUiNode) bottom).setText("bottom");
+
+        // Every ancestor of the bottom node has it as a descendant
+        BySelector selector = By.pkg(PKG).hasDescendant(By.text("bottom"));
+        Assert.assertEquals(2000, new UiNodeMatcher(selector, false).findMatches(root).size());
+
+        // But only the parent has it within one level
+        selector = By.pkg(PKG).hasDescendant(By.text("bottom"), 1);
+        List<UiNode> matches = new UiNodeMatcher(selector, false).findMatches(root);
+        Assert.assertEquals(1, matches.size());
+        Assert.assertSame(bottom, matches.get(0).getChild(0));
+    }
+
+    @Test
+    public void testChildSelectors() {
+        InMemoryUiNode root = new InMemoryUiNode(0).setClassName("Layout");
+        InMemoryUiNode row1 = root.addChild().setClassName("Row");
+        row1.addChild().setText("Title 1");
+        row1.addChild().setClassName("Switch").setChecked(true);
+        InMemoryUiNode row2 = root.addChild().setClassName("Row");
+        row2.addChild().setText("Title 2");
+        row2.addChild().setClassName("Switch");
+
+        BySelector checkedRow = By.clazz("Row")
+                .hasChild(By.textStartsWith("Title"))
+                .hasChild(By.clazz("Switch").checked(true));
+        List<UiNode> matches = new UiNodeMatcher(checkedRow, false).findMatches(root);
+        Assert.assertEquals(1, matches.size());
+        Assert.assertSame(row1, matches.get(0));
+
+        // A child selector is only satisfied by children, not by deeper descendants
+        BySelector layout = By.clazz("Layout").hasChild(By.text("Title 1"));
+        Assert.assertTrue(new UiNodeMatcher(layout, false).findMatches(root).isEmpty());
+        layout = By.clazz("Layout").hasDescendant(By.text("Title 1"));
+        Assert.assertEquals(1, new UiNodeMatcher(layout, false).findMatches(root).size());
+    }
+
+    @Test
+    public void testReuseAfterShortCircuit() {
+        InMemoryUiNode root = new InMemoryUiNode(0);
+        for (int i = 0; i < 3; i++) {
+            InMemoryUiNode row = root.addChild().setClassName("Row");
+            row.addChild().setText("Title");
+            row.addChild().addChild().setText("Summary");
+        }
+
+        // The first match is found with partial matches still pending deeper in the hierarchy.
+        // The pooled partial matches must be released before the matcher is used again.
+        BySelector selector = By.clazz("Row").hasChild(By.text("Title"))
+                .hasDescendant(By.text("Summary"));
+        UiNodeMatcher matcher = new UiNodeMatcher(selector, true);
+        for (int i = 0; i < 3; i++) {
+            List<UiNode> matches = matcher.findMatches(root);
+            Assert.assertEquals(1, matches.size());
+            Assert.assertSame(root.getChild(0), matches.get(0));
+        }
+        Assert.assertTrue(matcher.isMatch(root.getChild(2), 1));
+        Assert.assertFalse(matcher.isMatch(root, 0));
+        Assert.assertEquals(1, matcher.findMatches(root).size());
+
+        UiNodeMatcher findAll = new UiNodeMatcher(selector, false);
+        Assert.assertEquals(3, findAll.findMatches(root).size());
+        Assert.assertEquals(3, findAll.findMatches(root).size());
+    }
+
+    @Test
+    public void testFindAllMatches() {
+        InMemoryUiNode root = new InMemoryUiNode(0).setPackageName(PKG);
+        root.addChild().setPackageName(PKG).setText("a");
+        root.addChild().setPackageName(PKG).setText("b");
+        root.addChild().setPackageName(PKG).setText("a");
+
+        UiNodeMatcher matcher = new UiNodeMatcher(new BySelector[] {
+                By.text("a"), By.text("b"), By.text("c"), By.pkg(PKG) }, false);
+        List<List<UiNode>> matches = matcher.findAllMatches(root);
+        Assert.assertEquals(4, matches.size());
+        Assert.assertEquals(2, matches.get(0).size());
+        Assert.assertSame(root.getChild(0), matches.get(0).get(0));
+        Assert.assertSame(root.getChild(2), matches.get(0).get(1));
+        Assert.assertEquals(1, matches.get(1).size());
+        Assert.assertTrue(matches.get(2).isEmpty());
+        Assert.assertEquals(4, matches.get(3).size());
+    }
+
+    @Test
+    public void testInvisibleSubtreeSkipped() {
+        InMemoryUiNode root = new InMemoryUiNode(0);
+        InMemoryUiNode hidden = root.addChild().setVisibleToUser(false);
+        hidden.addChild().setText("a");
+        root.addChild().setText("a");
+
+        List<UiNode> matches = new UiNodeMatcher(By.text("a"), false).findMatches(root);
+        Assert.assertEquals(1, matches.size());
+        Assert.assertSame(root.getChild(1), matches.get(0));
+    }
+
+    @Test
+    public void testDepthPruning() {
+        int[] fetches = new int[1];
+        CountingNode root = CountingNode.chain(100, fetches);
+
+        // Only the root is asked for its child, since nothing below depth 1 can match
+        List<UiNode> matches =
+                new UiNodeMatcher(By.pkg(PKG).depth(0, 1), false).findMatches(root);
+        Assert.assertEquals(2, matches.size());
+        Assert.assertEquals(1, fetches[0]);
+
+        // A child selector with a depth bound extends the search only as far as it can match
+        fetches[0] = 0;
+        BySelector selector = By.depth(0).hasDescendant(By.pkg(PKG), 3);
+        matches = new UiNodeMatcher(selector, false).findMatches(root);
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(3, fetches[0]);
+
+        // Without bounds, the whole chain is visited
+        fetches[0] = 0;
+        matches = new UiNodeMatcher(By.pkg(PKG), false).findMatches(root);
+        Assert.assertEquals(101, matches.size());
+        Assert.assertEquals(100, fetches[0]);
+    }
+
+    /** Returns the root of a chain of {@code depth + 1} nodes. */
+    private static InMemoryUiNode chain(int depth) {
+        InMemoryUiNode root = new InMemoryUiNode(0).setPackageName(PKG);
+        InMemoryUiNode node = root;
+        for (int i = 0; i < depth; i++) {
+            node = node.addChild().setPackageName(PKG);
+        }
+        return root;
+    }
+
+    /** A node with at most one child, which counts how many times a child is fetched. */
+    private static class CountingNode extends InMemoryUiNode {
+        private final int[] mFetches;
+        private CountingNode mChild;
+
+        CountingNode(int[] fetches) {
+            super(0);
+            mFetches = fetches;
+            setPackageName(PKG);
+        }
+
+        static CountingNode chain(int depth, int[] fetches) {
+            CountingNode root = new CountingNode(fetches);
+            CountingNode node = root;
+            for (int i = 0; i < depth; i++) {
+                node.mChild = new CountingNode(fetches);
+                node = node.mChild;
+            }
+            return root;
+        }
+
+        @Override
+        public int getChildCount() {
+            return mChild != null ? 1 : 0;
+        }
+
+        @Override
+        public InMemoryUiNode getChild(int i) {
+            mFetches[0]++;
+            return mChild;
+        }
+    }
+}
@@ -16,16 +16,17 @@
 
 package android.support.test.uiautomator;
 
-import android.util.Log;
-import android.util.Xml;
-import android.view.accessibility.AccessibilityNodeInfo;
-
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
+ * Writes a {@link UiNode} hierarchy as XML. Only depends on the {@link UiNode} interface and the
+ * {@link XmlSerializer} it is given, so it can also run off-device.
  *
  * @hide
  */
@@ -33,68 +34,120 @@ class AccessibilityNodeInfoDumper {
 
     private static final String LOGTAG = AccessibilityNodeInfoDumper.class.getSimpleName();
     private static final String[] NAF_EXCLUDED_CLASSES = new String[] {
-            android.widget.GridView.class.getName(), android.widget.GridLayout.class.getName(),
-            android.widget.ListView.class.getName(), android.widget.TableLayout.class.getName()
+            "android.widget.GridView", "android.widget.GridLayout",
+            "android.widget.ListView", "android.widget.TableLayout"
+    };
+
+    /** Attributes written for each node, in order. */
+    static final String[] ATTRIBUTE_NAMES = new String[] {
+            "NAF", "index", "text", "resource-id", "class", "package", "content-desc",
+            "checkable", "checked", "clickable", "enabled", "focusable", "focused", "scrollable",
+            "long-clickable", "password", "selected", "bounds"
     };
 
-    public static void dumpWindowHierarchy(UiDevice device, OutputStream out) throws IOException {
-        XmlSerializer serializer = Xml.newSerializer();
+    /**
+     * Writes the hierarchy under each of the window {@code roots} to {@code out}.
+     *
+     * @param serializer The serializer used to write the XML.
+     * @param rotation The display rotation, written as an attribute of the hierarchy.
+     * @param width The display width, to which the node bounds are clipped.
+     * @param height The display height, to which the node bounds are clipped.
+     */
+    public static void dumpWindowHierarchy(XmlSerializer serializer, OutputStream out,
+            UiNode[] roots, int rotation, int width, int height) throws IOException {
         serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
         serializer.setOutput(out, "UTF-8");
 
         serializer.startDocument("UTF-8", true);
         serializer.startTag("", "hierarchy"); // TODO(allenhair): Should we use a namespace?
-        serializer.attribute("", "rotation", Integer.toString(device.getDisplayRotation()));
+        serializer.attribute("", "rotation", Integer.toString(rotation));
 
-        for (AccessibilityNodeInfo root : device.getWindowRoots()) {
-            dumpNodeRec(root, serializer, 0, device.getDisplayWidth(), device.getDisplayHeight());
+        Set<UiNode> nafNodes = findNafNodes(roots);
+        // Every node's attributes are written before the next node's are read, so the buffers
+        // are shared by the whole dump
+        int[] bounds = new int[4];
+        String[] attributes = new String[ATTRIBUTE_NAMES.length];
+        for (UiNode root : roots) {
+            dumpNodeRec(root, serializer, 0, nafNodes, width, height, bounds, attributes);
         }
 
         serializer.endTag("", "hierarchy");
         serializer.endDocument();
     }
 
-    private static void dumpNodeRec(AccessibilityNodeInfo node, XmlSerializer serializer,int index,
-            int width, int height) throws IOException {
+    private static void dumpNodeRec(UiNode node, XmlSerializer serializer, int index,
+            Set<UiNode> nafNodes, int width, int height, int[] bounds, String[] attributes)
+            throws IOException {
         serializer.startTag("", "node");
-        if (!nafExcludedClass(node) && !nafCheck(node))
-            serializer.attribute("", "NAF", Boolean.toString(true));
-        serializer.attribute("", "index", Integer.toString(index));
-        serializer.attribute("", "text", safeCharSeqToString(node.getText()));
-        serializer.attribute("", "resource-id", safeCharSeqToString(node.getViewIdResourceName()));
-        serializer.attribute("", "class", safeCharSeqToString(node.getClassName()));
-        serializer.attribute("", "package", safeCharSeqToString(node.getPackageName()));
-        serializer.attribute("", "content-desc", safeCharSeqToString(node.getContentDescription()));
-        serializer.attribute("", "checkable", Boolean.toString(node.isCheckable()));
-        serializer.attribute("", "checked", Boolean.toString(node.isChecked()));
-        serializer.attribute("", "clickable", Boolean.toString(node.isClickable()));
-        serializer.attribute("", "enabled", Boolean.toString(node.isEnabled()));
-        serializer.attribute("", "focusable", Boolean.toString(node.isFocusable()));
-        serializer.attribute("", "focused", Boolean.toString(node.isFocused()));
-        serializer.attribute("", "scrollable", Boolean.toString(node.isScrollable()));
-        serializer.attribute("", "long-clickable", Boolean.toString(node.isLongClickable()));
-        serializer.attribute("", "password", Boolean.toString(node.isPassword()));
-        serializer.attribute("", "selected", Boolean.toString(node.isSelected()));
-        serializer.attribute("", "bounds", AccessibilityNodeInfoHelper.getVisibleBoundsInScreen(
-                node, width, height).toShortString());
+        getAttributes(node, index, nafNodes.contains(node), width, height, bounds, attributes);
+        for (int i = 0; i < ATTRIBUTE_NAMES.length; i++) {
+            if (attributes[i] != null) {
+                serializer.attribute("", ATTRIBUTE_NAMES[i], attributes[i]);
+            }
+        }
+        // Invisible children were already left out when the hierarchy was captured
         int count = node.getChildCount();
         for (int i = 0; i < count; i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child != null) {
-                if (child.isVisibleToUser()) {
-                    dumpNodeRec(child, serializer, i, width, height);
-                    child.recycle();
-                } else {
-                    Log.i(LOGTAG, String.format("Skipping invisible child: %s", child.toString()));
-                }
-            } else {
-                Log.i(LOGTAG, String.format("Null child %d/%d, parent: %s",
-                        i, count, node.toString()));
-            }
+            UiNode child = node.getChild(i);
+            dumpNodeRec(child, serializer, child.getIndex(), nafNodes, width, height, bounds,
+                    attributes);
         }
         serializer.endTag("", "node");
     }
 
+    /**
+     * Copies the values of the {@link #ATTRIBUTE_NAMES} written for a node into
+     * {@code outAttributes}, in the same order. The NAF value is null unless {@code naf} is true.
+     * No arrays are allocated, so callers which write each node out before reading the next can
+     * pass the same buffers for every node.
+     *
+     * @param naf Whether the node fails the NAF check, as found by {@link #findNafNodes}.
+     * @param bounds A buffer of length 4 for the node's bounds.
+     * @param outAttributes A buffer of the length of {@link #ATTRIBUTE_NAMES}.
+     */
+    static void getAttributes(UiNode node, int index, boolean naf, int width, int height,
+            int[] bounds, String[] outAttributes) {
+        getVisibleBoundsInScreen(node, width, height, bounds);
+        outAttributes[0] = naf ? Boolean.toString(true) : null;
+        outAttributes[1] = Integer.toString(index);
+        outAttributes[2] = safeCharSeqToString(node.getText());
+        outAttributes[3] = safeCharSeqToString(node.getResourceName());
+        outAttributes[4] = safeCharSeqToString(node.getClassName());
+        outAttributes[5] = safeCharSeqToString(node.getPackageName());
+        outAttributes[6] = safeCharSeqToString(node.getContentDescription());
+        outAttributes[7] = Boolean.toString(node.isCheckable());
+        outAttributes[8] = Boolean.toString(node.isChecked());
+        outAttributes[9] = Boolean.toString(node.isClickable());
+        outAttributes[10] = Boolean.toString(node.isEnabled());
+        outAttributes[11] = Boolean.toString(node.isFocusable());
+        outAttributes[12] = Boolean.toString(node.isFocused());
+        outAttributes[13] = Boolean.toString(node.isScrollable());
+        outAttributes[14] = Boolean.toString(node.isLongClickable());
+        outAttributes[15] = Boolean.toString(node.isPassword());
+        outAttributes[16] = Boolean.toString(node.isSelected());
+        outAttributes[17] =
+                "[" + bounds[0] + "," + bounds[1] + "][" + bounds[2] + "," + bounds[3] + "]";
+    }
+
+    /**
+     * Copies the node's bounds clipped to the size of the display into {@code outBounds}, as
+     * left, top, right and bottom. Bounds which lie entirely off the display are not clipped,
+     * matching {@link AccessibilityNodeInfoHelper#getVisibleBoundsInScreen}.
+     */
+    static void getVisibleBoundsInScreen(UiNode node, int width, int height, int[] outBounds) {
+        node.getBoundsInScreen(outBounds);
+        int left = Math.max(outBounds[0], 0);
+        int top = Math.max(outBounds[1], 0);
+        int right = Math.min(outBounds[2], width);
+        int bottom = Math.min(outBounds[3], height);
+        if (left < right && top < bottom) {
+            outBounds[0] = left;
+            outBounds[1] = top;
+            outBounds[2] = right;
+            outBounds[3] = bottom;
+        }
+    }
+
     /**
      * The list of classes to exclude my not be complete. We're attempting to
      * only reduce noise from standard layout classes that may be falsely
@@ -103,7 +156,7 @@ class AccessibilityNodeInfoDumper {
      * @param node
      * @return true if node is excluded.
      */
-    private static boolean nafExcludedClass(AccessibilityNodeInfo node) {
+    static boolean nafExcludedClass(UiNode node) {
         String className = safeCharSeqToString(node.getClassName());
         for(String excludedClassName : NAF_EXCLUDED_CLASSES) {
             if(className.endsWith(excludedClassName))
@@ -118,49 +171,55 @@ class AccessibilityNodeInfoDumper {
      * interactive control is present in the UI and is most likely not
      * accessibility friendly. We refer to such controls here as NAF controls
      * (Not Accessibility Friendly)
+     * <p/>
+     * A node maybe a container such as LinerLayout and may be set to be
+     * clickable but have no text or content description but it is counting on
+     * one of its children to fulfill the requirement for being accessibility
+     * friendly by having one or more of its children fill the text or
+     * content-description. Such a combination is considered by this dumper as
+     * acceptable for accessibility.
+     * <p/>
+     * The whole hierarchy is checked in a single pass which reads the attributes
+     * of each node once, rather than searching the subtree of every suspect node.
      *
-     * @param node
-     * @return false if a node fails the check, true if all is OK
+     * @param roots
+     * @return the set of nodes which fail the check, compared by identity.
      */
-    private static boolean nafCheck(AccessibilityNodeInfo node) {
-        boolean isNaf = node.isClickable() && node.isEnabled()
-                && safeCharSeqToString(node.getContentDescription()).isEmpty()
-                && safeCharSeqToString(node.getText()).isEmpty();
-
-        if (!isNaf)
-            return true;
-
-        // check children since sometimes the containing element is clickable
-        // and NAF but a child's text or description is available. Will assume
-        // such layout as fine.
-        return childNafCheck(node);
+    static Set<UiNode> findNafNodes(UiNode[] roots) {
+        Set<UiNode> ret = Collections.newSetFromMap(new IdentityHashMap<UiNode, Boolean>());
+        for (UiNode root : roots) {
+            findNafNodesRec(root, ret);
+        }
+        return ret;
     }
 
     /**
-     * This should be used when it's already determined that the node is NAF and
-     * a further check of its children is in order. A node maybe a container
-     * such as LinerLayout and may be set to be clickable but have no text or
-     * content description but it is counting on one of its children to fulfill
-     * the requirement for being accessibility friendly by having one or more of
-     * its children fill the text or content-description. Such a combination is
-     * considered by this dumper as acceptable for accessibility.
+     * Adds the NAF nodes in the subtree under {@code node} to {@code nafNodes}.
      *
-     * @param node
-     * @return false if node fails the check.
+     * @return true if the node or one of its descendants has text or a content description.
      */
-    private static boolean childNafCheck(AccessibilityNodeInfo node) {
+    private static boolean findNafNodesRec(UiNode node, Set<UiNode> nafNodes) {
+        boolean hasLabel = !isEmpty(node.getContentDescription()) || !isEmpty(node.getText());
+
+        // check children since sometimes the containing element is clickable
+        // and NAF but a child's text or description is available.
+        boolean childHasLabel = false;
         int childCount = node.getChildCount();
         for (int x = 0; x < childCount; x++) {
-            AccessibilityNodeInfo childNode = node.getChild(x);
-
-            if (!safeCharSeqToString(childNode.getContentDescription()).isEmpty()
-                    || !safeCharSeqToString(childNode.getText()).isEmpty())
-                return true;
+            if (findNafNodesRec(node.getChild(x), nafNodes)) {
+                childHasLabel = true;
+            }
+        }
 
-            if (childNafCheck(childNode))
-                return true;
+        if (!hasLabel && !childHasLabel && node.isClickable() && node.isEnabled()
+                && !nafExcludedClass(node)) {
+            nafNodes.add(node);
         }
-        return false;
+        return hasLabel || childHasLabel;
+    }
+
+    private static boolean isEmpty(CharSequence cs) {
+        return cs == null || cs.length() == 0;
     }
 
     private static String safeCharSeqToString(CharSequence cs) {
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the window hierarchy in the compact binary format described by
+ * {@link BinaryHierarchyFormat}. Unlike {@link AccessibilityNodeInfoDumper}, strings are not
+ * copied or escaped, repeated class, package and resource names are written once, and every
+ * record is encoded into the same buffers.
+ */
+class BinaryHierarchyDumper {
+
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    private final OutputStream mOut;
+    private final byte[] mOutput = new byte[OUTPUT_BUFFER_SIZE];
+    private int mOutputLength;
+    private byte[] mRecord = new byte[256];
+    private int mRecordLength;
+    private final Map<String, Integer> mStrings = new HashMap<String, Integer>();
+    private final int[] mBounds = new int[4];
+    private final Set<UiNode> mNafNodes;
+
+    private BinaryHierarchyDumper(OutputStream out, Set<UiNode> nafNodes) {
+        mOut = out;
+        mNafNodes = nafNodes;
+    }
+
+    /**
+     * Writes the hierarchy under each of the window {@code roots} to {@code out}.
+     *
+     * @param rotation The display rotation.
+     * @param width The display width, to which the node bounds are clipped.
+     * @param height The display height, to which the node bounds are clipped.
+     */
+    public static void dumpWindowHierarchy(OutputStream out, UiNode[] roots, int rotation,
+            int width, int height) throws IOException {
+        BinaryHierarchyDumper dumper =
+                new BinaryHierarchyDumper(out, AccessibilityNodeInfoDumper.findNafNodes(roots));
+        dumper.writeBytes(BinaryHierarchyFormat.MAGIC);
+        dumper.writeVarint(BinaryHierarchyFormat.VERSION);
+        dumper.writeVarint(rotation);
+        dumper.writeVarint(roots.length);
+        for (UiNode root : roots) {
+            dumper.dumpNodeRec(root, 0, width, height);
+        }
+        dumper.flush();
+    }
+
+    private void dumpNodeRec(UiNode node, int index, int width, int height) throws IOException {
+        int flags = 0;
+        if (mNafNodes.contains(node)) {
+            flags |= BinaryHierarchyFormat.FLAG_NAF;
+        }
+        if (node.isCheckable()) flags |= BinaryHierarchyFormat.FLAG_CHECKABLE;
+        if (node.isChecked()) flags |= BinaryHierarchyFormat.FLAG_CHECKED;
+        if (node.isClickable()) flags |= BinaryHierarchyFormat.FLAG_CLICKABLE;
+        if (node.isEnabled()) flags |= BinaryHierarchyFormat.FLAG_ENABLED;
+        if (node.isFocusable()) flags |= BinaryHierarchyFormat.FLAG_FOCUSABLE;
+        if (node.isFocused()) flags |= BinaryHierarchyFormat.FLAG_FOCUSED;
+        if (node.isScrollable()) flags |= BinaryHierarchyFormat.FLAG_SCROLLABLE;
+        if (node.isLongClickable()) flags |= BinaryHierarchyFormat.FLAG_LONG_CLICKABLE;
+        if (node.isPassword()) flags |= BinaryHierarchyFormat.FLAG_PASSWORD;
+        if (node.isSelected()) flags |= BinaryHierarchyFormat.FLAG_SELECTED;
+
+        mRecordLength = 0;
+        recordVarint(index);
+        recordVarint(flags);
+        recordInternedString(node.getClassName());
+        recordInternedString(node.getPackageName());
+        recordInternedString(node.getResourceName());
+        recordString(node.getText());
+        recordString(node.getContentDescription());
+        AccessibilityNodeInfoDumper.getVisibleBoundsInScreen(node, width, height, mBounds);
+        recordSignedVarint(mBounds[0]);
+        recordSignedVarint(mBounds[1]);
+        recordSignedVarint(mBounds[2]);
+        recordSignedVarint(mBounds[3]);
+
+        writeVarint(mRecordLength);
+        writeBytes(mRecord, mRecordLength);
+
+        // Invisible children were already left out when the hierarchy was captured
+        int count = node.getChildCount();
+        writeVarint(count);
+        for (int i = 0; i < count; i++) {
+            UiNode child = node.getChild(i);
+            dumpNodeRec(child, child.getIndex(), width, height);
+        }
+    }
+
+    private void recordInternedString(CharSequence cs) {
+        if (cs == null || cs.length() == 0) {
+            recordVarint(0);
+            return;
+        }
+        String string = cs.toString();
+        Integer ref = mStrings.get(string);
+        if (ref != null) {
+            recordVarint(ref);
+            return;
+        }
+        ref = mStrings.size() + 1;
+        mStrings.put(string, ref);
+        recordVarint(ref);
+        recordString(string);
+    }
+
+    /** Encodes {@code cs} as UTF-8 directly into the record buffer. */
+    private void recordString(CharSequence cs) {
+        if (cs == null) {
+            recordVarint(0);
+            return;
+        }
+        int length = cs.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80) {
+                utf8Length += 1;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        recordVarint(utf8Length);
+        ensureRecordCapacity(utf8Length);
+
+        byte[] buf = mRecord;
+        int pos = mRecordLength;
+        for (int i = 0; i < length; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte)c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte)(0xc0 | (c >> 6));
+                buf[pos++] = (byte)(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, cs.charAt(++i));
+                buf[pos++] = (byte)(0xf0 | (codePoint >> 18));
+                buf[pos++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+                buf[pos++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+                buf[pos++] = (byte)(0x80 | (codePoint & 0x3f));
+            } else {
+                // Unpaired surrogates are written as-is, which decoders replace
+                buf[pos++] = (byte)(0xe0 | (c >> 12));
+                buf[pos++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+                buf[pos++] = (byte)(0x80 | (c & 0x3f));
+            }
+        }
+        mRecordLength = pos;
+    }
+
+    private void recordSignedVarint(int value) {
+        recordVarint((value << 1) ^ (value >> 31));
+    }
+
+    private void recordVarint(int value) {
+        ensureRecordCapacity(5);
+        while ((value & ~0x7f) != 0) {
+            mRecord[mRecordLength++] = (byte)((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mRecord[mRecordLength++] = (byte)value;
+    }
+
+    private void ensureRecordCapacity(int extra) {
+        if (mRecordLength + extra > mRecord.length) {
+            byte[] grown = new byte[Math.max(mRecordLength + extra, mRecord.length * 2)];
+            System.arraycopy(mRecord, 0, grown, 0, mRecordLength);
+            mRecord = grown;
+        }
+    }
+
+    private void writeVarint(int value) throws IOException {
+        if (mOutputLength + 5 > mOutput.length) {
+            flushBuffer();
+        }
+        while ((value & ~0x7f) != 0) {
+            mOutput[mOutputLength++] = (byte)((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mOutput[mOutputLength++] = (byte)value;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, bytes.length);
+    }
+
+    private void writeBytes(byte[] bytes, int length) throws IOException {
+        if (mOutputLength + length > mOutput.length) {
+            flushBuffer();
+            if (length > mOutput.length) {
+                mOut.write(bytes, 0, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, mOutput, mOutputLength, length);
+        mOutputLength += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        mOut.write(mOutput, 0, mOutputLength);
+        mOutputLength = 0;
+    }
+
+    private void flush() throws IOException {
+        flushBuffer();
+        mOut.flush();
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the binary hierarchy dump written by {@link BinaryHierarchyDumper}, and converts it
+ * back into the XML written by {@link AccessibilityNodeInfoDumper}. This class has no Android
+ * dependencies so that dumps can be converted on the host:
+ * <pre>
+ * java -jar hierarchy-converter.jar window_dump.bin &gt; window_dump.xml
+ * </pre>
+ *
+ * <h3>Format</h3>
+ * All integers are unsigned LEB128 varints, except bounds which are zigzag encoded first.
+ * Strings are a varint byte length followed by UTF-8 bytes.
+ * <pre>
+ * dump      := MAGIC VERSION rotation rootCount node*
+ * node      := recordLength record childCount node*
+ * record    := index flags class package resourceId text contentDesc left top right bottom
+ * </pre>
+ * Class, package and resource id are interned: each is a varint reference, where 0 means empty,
+ * a reference one past the number of strings seen so far is followed by a new string, and any
+ * other reference repeats an earlier string. The record length lets readers skip fields added by
+ * later versions.
+ */
+class BinaryHierarchyFormat {
+
+    static final byte[] MAGIC = { 'U', 'I', 'A', 'H' };
+    static final int VERSION = 1;
+
+    // Bits of the flags field
+    static final int FLAG_NAF            = 1 << 0;
+    static final int FLAG_CHECKABLE      = 1 << 1;
+    static final int FLAG_CHECKED        = 1 << 2;
+    static final int FLAG_CLICKABLE      = 1 << 3;
+    static final int FLAG_ENABLED        = 1 << 4;
+    static final int FLAG_FOCUSABLE      = 1 << 5;
+    static final int FLAG_FOCUSED        = 1 << 6;
+    static final int FLAG_SCROLLABLE     = 1 << 7;
+    static final int FLAG_LONG_CLICKABLE = 1 << 8;
+    static final int FLAG_PASSWORD       = 1 << 9;
+    static final int FLAG_SELECTED       = 1 << 10;
+
+    // Matches the output of the indenting XmlSerializer used by AccessibilityNodeInfoDumper
+    private static final String NEWLINE = "\r\n";
+    private static final String INDENT = "  ";
+
+    private final DataInputStream mIn;
+    private final Writer mOut;
+    private final List<String> mStrings = new ArrayList<String>();
+    private byte[] mRecord = new byte[256];
+    private int mPosition;
+    private int mLength;
+
+    private BinaryHierarchyFormat(InputStream in, Writer out) {
+        mIn = new DataInputStream(in);
+        mOut = out;
+    }
+
+    /**
+     * Reads a binary hierarchy dump from {@code in} and writes the equivalent XML to {@code out}.
+     */
+    static void toXml(InputStream in, Writer out) throws IOException {
+        new BinaryHierarchyFormat(in, out).convert();
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: hierarchy-converter <dump.bin>");
+            System.exit(1);
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+        try {
+            toXml(in, new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8")));
+        } finally {
+            in.close();
+        }
+    }
+
+    private void convert() throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        mIn.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a binary hierarchy dump");
+            }
+        }
+        int version = readVarint(mIn);
+        if (version > VERSION) {
+            throw new IOException("Unsupported binary hierarchy dump version: " + version);
+        }
+
+        int rotation = readVarint(mIn);
+        int rootCount = readVarint(mIn);
+
+        mOut.write("<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>");
+        mOut.write(NEWLINE);
+        mOut.write("<hierarchy rotation=\"" + rotation + "\">");
+        for (int i = 0; i < rootCount; i++) {
+            convertNode(1);
+        }
+        mOut.write(NEWLINE);
+        mOut.write("</hierarchy>");
+    }
+
+    private void convertNode(int depth) throws IOException {
+        // Read the whole record, so that unknown trailing fields are skipped
+        mLength = readVarint(mIn);
+        if (mRecord.length < mLength) {
+            mRecord = new byte[Math.max(mLength, mRecord.length * 2)];
+        }
+        mIn.readFully(mRecord, 0, mLength);
+        mPosition = 0;
+
+        int index = readVarint();
+        int flags = readVarint();
+        String clazz = readInternedString();
+        String pkg = readInternedString();
+        String res = readInternedString();
+        String text = readString();
+        String desc = readString();
+        int left = readSignedVarint();
+        int top = readSignedVarint();
+        int right = readSignedVarint();
+        int bottom = readSignedVarint();
+        int childCount = readVarint(mIn);
+
+        newline(depth);
+        mOut.write("<node");
+        if ((flags & FLAG_NAF) != 0) {
+            attribute("NAF", "true");
+        }
+        attribute("index", Integer.toString(index));
+        attribute("text", text);
+        attribute("resource-id", res);
+        attribute("class", clazz);
+        attribute("package", pkg);
+        attribute("content-desc", desc);
+        attribute("checkable", flags, FLAG_CHECKABLE);
+        attribute("checked", flags, FLAG_CHECKED);
+        attribute("clickable", flags, FLAG_CLICKABLE);
+        attribute("enabled", flags, FLAG_ENABLED);
+        attribute("focusable", flags, FLAG_FOCUSABLE);
+        attribute("focused", flags, FLAG_FOCUSED);
+        attribute("scrollable", flags, FLAG_SCROLLABLE);
+        attribute("long-clickable", flags, FLAG_LONG_CLICKABLE);
+        attribute("password", flags, FLAG_PASSWORD);
+        attribute("selected", flags, FLAG_SELECTED);
+        attribute("bounds", "[" + left + "," + top + "][" + right + "," + bottom + "]");
+
+        if (childCount == 0) {
+            mOut.write(" />");
+            return;
+        }
+        mOut.write(">");
+        for (int i = 0; i < childCount; i++) {
+            convertNode(depth + 1);
+        }
+        newline(depth);
+        mOut.write("</node>");
+    }
+
+    private void newline(int depth) throws IOException {
+        mOut.write(NEWLINE);
+        for (int i = 0; i < depth; i++) {
+            mOut.write(INDENT);
+        }
+    }
+
+    private void attribute(String name, int flags, int flag) throws IOException {
+        attribute(name, (flags & flag) != 0 ? "true" : "false");
+    }
+
+    private void attribute(String name, String value) throws IOException {
+        mOut.write(' ');
+        mOut.write(name);
+        mOut.write("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    mOut.write("&amp;");
+                    break;
+                case '<':
+                    mOut.write("&lt;");
+                    break;
+                case '>':
+                    mOut.write("&gt;");
+                    break;
+                case '"':
+                    mOut.write("&quot;");
+                    break;
+                case '\n':
+                case '\r':
+                case '\t':
+                    mOut.write("&#" + (int)c + ";");
+                    break;
+                default:
+                    mOut.write(isInvalidXmlChar(c) ? '.' : c);
+                    break;
+            }
+        }
+        mOut.write('"');
+    }
+
+    /** Same character ranges that {@link AccessibilityNodeInfoDumper} replaces. */
+    private static boolean isInvalidXmlChar(char ch) {
+        return (ch >= 0x1 && ch <= 0x8) || (ch >= 0xB && ch <= 0xC) ||
+                (ch >= 0xE && ch <= 0x1F) || (ch >= 0x7F && ch <= 0x84) ||
+                (ch >= 0x86 && ch <= 0x9f) || (ch >= 0xFDD0 && ch <= 0xFDDF);
+    }
+
+    private String readInternedString() throws IOException {
+        int ref = readVarint();
+        if (ref == 0) {
+            return "";
+        }
+        if (ref == mStrings.size() + 1) {
+            mStrings.add(readString());
+        } else if (ref > mStrings.size()) {
+            throw new IOException("Invalid string reference: " + ref);
+        }
+        return mStrings.get(ref - 1);
+    }
+
+    private String readString() throws IOException {
+        int length = readVarint();
+        if (mPosition + length > mLength) {
+            throw new EOFException("Truncated string");
+        }
+        String ret = new String(mRecord, mPosition, length, "UTF-8");
+        mPosition += length;
+        return ret;
+    }
+
+    private int readSignedVarint() throws IOException {
+        int value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readVarint() throws IOException {
+        int ret = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (mPosition >= mLength) {
+                throw new EOFException("Truncated record");
+            }
+            byte b = mRecord[mPosition++];
+            ret |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return ret;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int ret = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            ret |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return ret;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
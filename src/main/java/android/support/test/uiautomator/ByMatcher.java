@@ -16,46 +16,51 @@
 
 package android.support.test.uiautomator;
 
-import android.os.SystemClock;
-import android.util.Log;
 import android.view.accessibility.AccessibilityNodeInfo;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
  * A utility class which provides static methods for searching the {@link AccessibilityNodeInfo}
- * hierarchy for nodes that match {@link BySelector} criteria.
+ * hierarchy for nodes that match {@link BySelector} criteria. The matching itself is done by a
+ * {@link UiNodeMatcher} over the device's {@link HierarchySnapshot}.
  */
 class ByMatcher {
 
     private static final String TAG = ByMatcher.class.getSimpleName();
 
+    // Evaluating a candidate on its own costs a few times more per node than visiting that node in
+    // a traversal, so candidates are only evaluated if they cover a small part of the search
+    private static final int CANDIDATE_COST_FACTOR = 4;
+
     private UiDevice mDevice;
     private BySelector mSelector;
+    private AccessibilityNodeInfo mRoot;
     private boolean mShortCircuit;
 
     /**
      * Constructs a new {@link ByMatcher} instance. Used by
-     * {@link ByMatcher#findMatch(UiDevice, BySelector, AccessibilityNodeInfo...)} to store state information
-     * that does not change during recursive calls.
+     * {@link ByMatcher#findMatch(UiDevice, BySelector)} to store state information that does not
+     * change during recursive calls.
      *
      * @param selector The criteria used to determine if a {@link AccessibilityNodeInfo} is a match.
+     * @param root The node under which to search, or null to search every window.
      * @param shortCircuit If true, this method will return early when the first match is found.
      */
-    private ByMatcher(UiDevice device, BySelector selector, boolean shortCircuit) {
+    private ByMatcher(UiDevice device, BySelector selector, AccessibilityNodeInfo root,
+            boolean shortCircuit) {
         mDevice = device;
         mSelector = selector;
+        mRoot = root;
         mShortCircuit = shortCircuit;
     }
 
     /**
-     * Traverses the {@link AccessibilityNodeInfo} hierarchy starting at each {@code root} and
-     * returns the first node to match the {@code selector} criteria. <br />
+     * Searches the current {@link HierarchySnapshot} of every window and returns the first node to
+     * match the {@code selector} criteria. <br />
      * <strong>Note:</strong> The caller must release the {@link AccessibilityNodeInfo} instance by
      * calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
      *
@@ -63,23 +68,33 @@ class ByMatcher {
      * @param selector The {@link BySelector} criteria used to determine if a node is a match.
      * @return The first {@link AccessibilityNodeInfo} which matched the search criteria.
      */
+    static AccessibilityNodeInfo findMatch(UiDevice device, BySelector selector) {
+        return findMatch(device, selector, null);
+    }
+
+    /**
+     * Searches the hierarchy under {@code root} and returns the first node to match the
+     * {@code selector} criteria. <br />
+     * <strong>Note:</strong> The caller must release the {@link AccessibilityNodeInfo} instance by
+     * calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
+     *
+     * @param device A reference to the {@link UiDevice}.
+     * @param selector The {@link BySelector} criteria used to determine if a node is a match.
+     * @param root The node under which to search, or null to search every window.
+     * @return The first {@link AccessibilityNodeInfo} which matched the search criteria.
+     */
     static AccessibilityNodeInfo findMatch(UiDevice device, BySelector selector,
-            AccessibilityNodeInfo... roots) {
+            AccessibilityNodeInfo root) {
 
         // TODO: Don't short-circuit when debugging, and warn if more than one match.
-        ByMatcher matcher = new ByMatcher(device, selector, true);
-        for (AccessibilityNodeInfo root : roots) {
-            List<AccessibilityNodeInfo> matches = matcher.findMatches(root);
-            if (!matches.isEmpty()) {
-                return matches.get(0);
-            }
-        }
-        return null;
+        ByMatcher matcher = new ByMatcher(device, selector, root, true);
+        List<AccessibilityNodeInfo> matches = matcher.findMatches();
+        return !matches.isEmpty() ? matches.get(0) : null;
     }
 
     /**
-     * Traverses the {@link AccessibilityNodeInfo} hierarchy starting at each {@code root} and
-     * returns a list of nodes which match the {@code selector} criteria. <br />
+     * Searches the current {@link HierarchySnapshot} of every window and returns a list of nodes
+     * which match the {@code selector} criteria. <br />
      * <strong>Note:</strong> The caller must release each {@link AccessibilityNodeInfo} instance
      * by calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
      *
@@ -87,301 +102,245 @@ class ByMatcher {
      * @param selector The {@link BySelector} criteria used to determine if a node is a match.
      * @return A list containing all of the nodes which matched the search criteria.
      */
+    static List<AccessibilityNodeInfo> findMatches(UiDevice device, BySelector selector) {
+        return findMatches(device, selector, null);
+    }
+
+    /**
+     * Searches the hierarchy under {@code root} and returns a list of nodes which match the
+     * {@code selector} criteria. <br />
+     * <strong>Note:</strong> The caller must release each {@link AccessibilityNodeInfo} instance
+     * by calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
+     *
+     * @param device A reference to the {@link UiDevice}.
+     * @param selector The {@link BySelector} criteria used to determine if a node is a match.
+     * @param root The node under which to search, or null to search every window.
+     * @return A list containing all of the nodes which matched the search criteria.
+     */
     static List<AccessibilityNodeInfo> findMatches(UiDevice device, BySelector selector,
-            AccessibilityNodeInfo... roots) {
+            AccessibilityNodeInfo root) {
 
-        List<AccessibilityNodeInfo> ret = new ArrayList<AccessibilityNodeInfo>();
-        ByMatcher matcher = new ByMatcher(device, selector, false);
-        for (AccessibilityNodeInfo root : roots) {
-            ret.addAll(matcher.findMatches(root));
+        ByMatcher matcher = new ByMatcher(device, selector, root, false);
+        return matcher.findMatches();
+    }
+
+    /**
+     * Searches the current {@link HierarchySnapshot} of every window once for all of the
+     * {@code selectors}, and returns the nodes which match each of them. <br />
+     * <strong>Note:</strong> The caller must release each {@link AccessibilityNodeInfo} instance
+     * by calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
+     *
+     * @param device A reference to the {@link UiDevice}.
+     * @param selectors The {@link BySelector} criteria to search for, by name.
+     * @return A map from each name in {@code selectors} to the list of nodes which matched the
+     * corresponding criteria, in the iteration order of {@code selectors}.
+     */
+    static Map<String, List<AccessibilityNodeInfo>> findMatches(UiDevice device,
+            Map<String, BySelector> selectors) {
+
+        BySelector[] criteria = selectors.values().toArray(new BySelector[selectors.size()]);
+        UiNodeMatcher matcher = new UiNodeMatcher(criteria, false);
+        List<List<UiNode>> matches =
+                matcher.findAllMatches(device.getHierarchySnapshot().getRoots());
+
+        // If any of the selectors had no matches
+        for (List<UiNode> match : matches) {
+            if (match.isEmpty()) {
+                // Run watchers and retry
+                device.runWatchers();
+                matches = matcher.findAllMatches(device.getHierarchySnapshot().getRoots());
+                break;
+            }
+        }
+
+        Map<String, List<AccessibilityNodeInfo>> ret =
+                new LinkedHashMap<String, List<AccessibilityNodeInfo>>();
+        int i = 0;
+        for (String name : selectors.keySet()) {
+            ret.put(name, obtain(matches.get(i++)));
         }
         return ret;
     }
 
     /**
-     * Traverses the {@link AccessibilityNodeInfo} hierarchy starting at {@code root}, and returns
-     * a list of nodes which match the {@code selector} criteria. <br />
+     * Searches the current {@link HierarchySnapshot}, running the watchers and searching a fresh
+     * snapshot if nothing matched. <br />
      * <strong>Note:</strong> The caller must release each {@link AccessibilityNodeInfo} instance
      * by calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
      *
-     * @param root The root {@link AccessibilityNodeInfo} from which to start the search.
      * @return A list containing all of the nodes which matched the search criteria.
      */
-    private List<AccessibilityNodeInfo> findMatches(AccessibilityNodeInfo root) {
-        List<AccessibilityNodeInfo> ret =
-                findMatches(root, 0, 0, new SinglyLinkedList<PartialMatch>());
+    private List<AccessibilityNodeInfo> findMatches() {
+        List<AccessibilityNodeInfo> ret = search();
 
         // If no matches were found
         if (ret.isEmpty()) {
             // Run watchers and retry
             mDevice.runWatchers();
-            ret = findMatches(root, 0, 0, new SinglyLinkedList<PartialMatch>());
+            ret = search();
         }
 
         return ret;
     }
 
     /**
-     * Traverses the {@link AccessibilityNodeInfo} hierarchy starting at {@code node}, and returns
-     * a list of nodes which match the {@code selector} criteria. <br />
-     * <strong>Note:</strong> The caller must release each {@link AccessibilityNodeInfo} instance
-     * by calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
-     *
-     * @param node The root of the {@link AccessibilityNodeInfo} subtree we are currently searching.
-     * @param index The index of this node underneath its parent.
-     * @param depth The distance between {@code node} and the root node.
-     * @param partialMatches The current list of {@link PartialMatch}es that need to be updated.
-     * @return A {@link List} of {@link AccessibilityNodeInfo}s that meet the search criteria.
+     * Searches the current {@link HierarchySnapshot} once. If the root node is not part of the
+     * device snapshot (e.g. it is not visible), its subtree is captured separately.
      */
-    private List<AccessibilityNodeInfo> findMatches(AccessibilityNodeInfo node,
-            int index, int depth, SinglyLinkedList<PartialMatch> partialMatches) {
-
-        List<AccessibilityNodeInfo> ret = new ArrayList<AccessibilityNodeInfo>();
-
-        // Don't bother searching the subtree if it is not visible
-        if (!node.isVisibleToUser()) {
-            return ret;
-        }
-
-        // Update partial matches
-        for (PartialMatch partialMatch : partialMatches) {
-            partialMatches = partialMatch.update(node, index, depth, partialMatches);
-        }
-
-        // Create a new match, if necessary
-        PartialMatch currentMatch = PartialMatch.accept(node, mSelector, index, depth);
-        if (currentMatch != null) {
-            partialMatches = SinglyLinkedList.prepend(currentMatch, partialMatches);
-        }
-
-        // For each child
-        int numChildren = node.getChildCount();
-        boolean hasNullChild = false;
-        for (int i = 0; i < numChildren; i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child == null) {
-                if (!hasNullChild) {
-                    Log.w(TAG, String.format("Node returned null child: %s", node.toString()));
-                }
-                hasNullChild = true;
-                Log.w(TAG, String.format("Skipping null child (%s of %s)", i, numChildren));
-                continue;
+    private List<AccessibilityNodeInfo> search() {
+        HierarchySnapshot snapshot = mDevice.getHierarchySnapshot();
+        HierarchySnapshot.Node[] roots;
+        if (mRoot == null) {
+            roots = snapshot.getRoots();
+        } else {
+            HierarchySnapshot.Node node = snapshot.getNode(mRoot);
+            if (node == null) {
+                snapshot = HierarchySnapshot.capture(snapshot.getGeneration(), mRoot);
+                node = snapshot.getRoots()[0];
             }
+            roots = new HierarchySnapshot.Node[] { node };
+        }
 
-            // Add any matches found under the child subtree
-            ret.addAll(findMatches(child, i, depth + 1, partialMatches));
-
-            // We're done with the child
-            child.recycle();
-
-            // Return early if we sound a match and shortCircuit is true
-            if (!ret.isEmpty() && mShortCircuit) {
+        // Only visit the nodes that can satisfy a literal criteria, if there are few enough
+        List<HierarchySnapshot.Node> candidates = findCandidates(snapshot);
+        if (candidates != null) {
+            List<AccessibilityNodeInfo> ret = findMatches(candidates, roots);
+            if (ret != null) {
                 return ret;
             }
         }
+        return findMatches(roots);
+    }
 
-        // Finalize match, if necessary
-        if (currentMatch != null && currentMatch.finalizeMatch()) {
-            ret.add(AccessibilityNodeInfo.obtain(node));
-        }
+    /**
+     * Looks up the nodes which exactly match the literal resource name, text or class name criteria
+     * of the selector, and returns the smallest such list. Returns null if the selector has no
+     * literal criteria that can be looked up. Package names are not looked up, since nearly every
+     * node of a window shares the same one.
+     */
+    private List<HierarchySnapshot.Node> findCandidates(HierarchySnapshot snapshot) {
+        List<HierarchySnapshot.Node> ret = null;
 
+        String literal = getLiteral(mSelector.mRes);
+        if (literal != null) {
+            ret = smallest(ret, snapshot.getNodesByResourceName(literal));
+        }
+        literal = getLiteral(mSelector.mText);
+        if (literal != null) {
+            ret = smallest(ret, snapshot.getNodesByText(literal));
+        }
+        literal = getLiteral(mSelector.mClazz);
+        if (literal != null) {
+            ret = smallest(ret, snapshot.getNodesByClassName(literal));
+        }
         return ret;
     }
 
-    /** Helper method used to evaluate a {@link Pattern} criteria if it is set. */
-    static private boolean checkCriteria(Pattern criteria, CharSequence value) {
-        if (criteria == null) {
-            return true;
-        }
-        return criteria.matcher(value != null ? value : "").matches();
+    private static <T> List<T> smallest(List<T> a, List<T> b) {
+        return a == null || b.size() < a.size() ? b : a;
     }
 
-    /** Helper method used to evaluate a {@link Boolean} criteria if it is set. */
-    static private boolean checkCriteria(Boolean criteria, boolean value) {
-        if (criteria == null) {
-            return true;
+    /**
+     * Returns the string matched by {@code criteria} if it is an exact, non-empty literal, or null
+     * otherwise.
+     */
+    static String getLiteral(StringCriterion criteria) {
+        if (criteria == null || criteria.getType() != StringCriterion.EQUALS ||
+                criteria.getValue().isEmpty()) {
+            return null;
         }
-        return criteria.equals(value);
+        return criteria.getValue();
     }
 
     /**
-     * A {@link PartialMatch} instance represents a potential match against the given
-     * {@link BySelector}. Attributes of the current node itself have been evaluated, but any child
-     * selectors have not, since we must first visit the subtree under the node before we can tell
-     * if the child selectors were matched.
+     * Evaluates each of the {@code candidates} which lies under one of the visible {@code roots},
+     * and returns the ones that fully match the {@code selector} criteria. Candidates are visited
+     * in the order a full traversal would have found them.
+     * <p/>
+     * Returns null without evaluating any candidate if that would visit more nodes than a
+     * fraction of a full traversal of the {@code roots}. Each candidate costs the walk up to its
+     * search root and, if the selector has child selectors, a walk of its subtree.
      */
-    static private class PartialMatch {
-        private final int matchDepth;
-        private final BySelector matchSelector;
-        private final List<PartialMatch> partialMatches = new ArrayList<PartialMatch>();
-
-        /**
-         * Private constructor. Should be instanciated by calling the
-         * {@link PartialMatch#accept(AccessibilityNodeInfo, BySelector, int, int)} factory method.
-         */
-        private PartialMatch(BySelector selector, int depth) {
-            matchSelector = selector;
-            matchDepth = depth;
-        }
+    private List<AccessibilityNodeInfo> findMatches(List<HierarchySnapshot.Node> candidates,
+            HierarchySnapshot.Node[] roots) {
 
-        /**
-         * Factory method which returns a new {@link PartialMatch} if the node partially matches
-         * the {@code selector}, otherwise returns null.
-         *
-         * @param node The node to check.
-         * @param selector The criteria used to evaluate the node.
-         * @param index The index of this node underneath its parent.
-         * @param depth The distance between {@code node} and the root node.
-         * @return A {@link PartialMatch} instance if the node matches all non-child selector
-         * criteria, otherwise null.
-         */
-        public static PartialMatch accept(AccessibilityNodeInfo node, BySelector selector,
-                int index, int depth) {
-            return accept(node, selector, index, depth, depth);
+        int budget = 0;
+        for (HierarchySnapshot.Node root : roots) {
+            budget += root.getSubtreeSize();
         }
-
-        /**
-         * Factory method which returns a new {@link PartialMatch} if the node partially matches
-         * the {@code selector}, otherwise returns null.
-         *
-         * @param node The node to check.
-         * @param selector The criteria used to evaluate the node.
-         * @param index The index of this node underneath its parent.
-         * @param absoluteDepth The distance between {@code node} and the root node.
-         * @param relativeDepth The distance between {@code node} and the matching ancestor.
-         * @return A {@link PartialMatch} instance if the node matches all non-child selector
-         * criteria, otherwise null.
-         */
-        public static PartialMatch accept(AccessibilityNodeInfo node, BySelector selector,
-                int index, int absoluteDepth, int relativeDepth) {
-
-            if ((selector.mMinDepth != null && relativeDepth < selector.mMinDepth) ||
-                    (selector.mMaxDepth != null && relativeDepth > selector.mMaxDepth)) {
-                return null;
-            }
-
-            // NB: index is not checked, as it is not a BySelector criteria (yet). Keeping the
-            // parameter in place in case matching on index is really needed.
-
-            PartialMatch ret = null;
-            if (checkCriteria(selector.mClazz, node.getClassName()) &&
-                    checkCriteria(selector.mDesc, node.getContentDescription()) &&
-                    checkCriteria(selector.mPkg, node.getPackageName()) &&
-                    checkCriteria(selector.mRes, node.getViewIdResourceName()) &&
-                    checkCriteria(selector.mText, node.getText()) &&
-                    checkCriteria(selector.mChecked, node.isChecked()) &&
-                    checkCriteria(selector.mCheckable, node.isCheckable()) &&
-                    checkCriteria(selector.mClickable, node.isClickable()) &&
-                    checkCriteria(selector.mEnabled, node.isEnabled()) &&
-                    checkCriteria(selector.mFocused, node.isFocused()) &&
-                    checkCriteria(selector.mFocusable, node.isFocusable()) &&
-                    checkCriteria(selector.mLongClickable, node.isLongClickable()) &&
-                    checkCriteria(selector.mScrollable, node.isScrollable()) &&
-                    checkCriteria(selector.mSelected, node.isSelected())) {
-
-                ret = new PartialMatch(selector, absoluteDepth);
-            }
-            return ret;
+        budget /= CANDIDATE_COST_FACTOR;
+        if (candidates.size() > budget) {
+            return null;
         }
 
-        /**
-         * Updates this {@link PartialMatch} as part of the tree traversal. Checks to see if
-         * {@code node} matches any of the child selectors that need to match for this
-         * {@link PartialMatch} to be considered a full match.
-         *
-         * @param node The node to process.
-         * @param index The index of this node underneath its parent.
-         * @param depth The distance between {@code node} and the root node.
-         * @param rest The list of {@link PartialMatch}es that our caller is currently tracking
-         * @return The list of {@link PartialMatch}es that our caller should track while traversing
-         * the subtree under this node.
-         */
-        public SinglyLinkedList<PartialMatch> update(AccessibilityNodeInfo node,
-                int index, int depth, SinglyLinkedList<PartialMatch> rest) {
-
-            // Check if this node matches any of our children
-            for (BySelector childSelector : matchSelector.mChildSelectors) {
-                PartialMatch m = PartialMatch.accept(node, childSelector, index, depth,
-                        depth - matchDepth);
-                if (m != null) {
-                    partialMatches.add(m);
-                    rest = SinglyLinkedList.prepend(m, rest);
+        // Resolve the search root of every candidate before evaluating any of them
+        boolean hasChildSelectors = !mSelector.mChildSelectors.isEmpty();
+        List<HierarchySnapshot.Node> inScope = new ArrayList<HierarchySnapshot.Node>();
+        List<HierarchySnapshot.Node> inScopeRoots = new ArrayList<HierarchySnapshot.Node>();
+        int cost = 0;
+        for (HierarchySnapshot.Node candidate : candidates) {
+            cost++;
+            HierarchySnapshot.Node root = null;
+            for (HierarchySnapshot.Node r : roots) {
+                if (r == candidate.getRoot()) {
+                    root = r;
+                } else if (r.getRoot() == candidate.getRoot()
+                        && r.getDepth() <= candidate.getDepth()) {
+                    // Only a root inside the captured tree needs a walk up to it
+                    HierarchySnapshot.Node n = candidate;
+                    for (int i = candidate.getDepth() - r.getDepth(); i > 0; i--) {
+                        n = n.getParent();
+                    }
+                    cost += candidate.getDepth() - r.getDepth();
+                    root = n == r ? r : null;
                 }
+                if (root != null) {
+                    break;
+                }
+            }
+            if (root == null || !root.isVisibleToUser()) {
+                continue;
+            }
+            if (hasChildSelectors) {
+                cost += candidate.getSubtreeSize() - 1;
+            }
+            if (cost > budget) {
+                return null;
             }
-            return rest;
+            inScope.add(candidate);
+            inScopeRoots.add(root);
         }
 
-        /**
-         * Finalizes this {@link PartialMatch} and returns true if it was a full match, or false
-         * otherwise.
-         */
-        public boolean finalizeMatch() {
-            // Find out which of our child selectors were fully matched
-            Set<BySelector> matches = new HashSet<BySelector>();
-            for (PartialMatch p : partialMatches) {
-                if (p.finalizeMatch()) {
-                    matches.add(p.matchSelector);
+        UiNodeMatcher matcher = new UiNodeMatcher(mSelector, mShortCircuit);
+        List<AccessibilityNodeInfo> ret = new ArrayList<AccessibilityNodeInfo>();
+        for (int i = 0; i < inScope.size(); i++) {
+            HierarchySnapshot.Node candidate = inScope.get(i);
+            if (matcher.isMatch(candidate, candidate.getDepth() - inScopeRoots.get(i).getDepth())) {
+                ret.add(AccessibilityNodeInfo.obtain(candidate.getInfo()));
+                if (mShortCircuit) {
+                    break;
                 }
             }
-
-            // Return true if matches were found for all of the child selectors
-            return matches.containsAll(matchSelector.mChildSelectors);
         }
+        return ret;
     }
 
     /**
-     * Immutable, singly-linked List. Used to keep track of the {@link PartialMatch}es that we
-     * need to update when visiting nodes.
+     * Searches each of the {@code roots} in order, and returns a list of nodes which match the
+     * {@code selector} criteria. <br />
+     * <strong>Note:</strong> The caller must release each {@link AccessibilityNodeInfo} instance
+     * by calling {@link AccessibilityNodeInfo#recycle()} to avoid leaking resources.
      */
-    private static class SinglyLinkedList<T> implements Iterable<T> {
-
-        private final Node<T> mHead;
-
-        /** Constructs an empty list. */
-        public SinglyLinkedList() {
-            this(null);
-        }
-
-        private SinglyLinkedList(Node<T> head) {
-            mHead = head;
-        }
-
-        /** Returns a new list obtained by prepending {@code data} to {@code rest}. */
-        public static <T> SinglyLinkedList<T> prepend(T data, SinglyLinkedList<T> rest) {
-            return new SinglyLinkedList<T>(new Node<T>(data, rest.mHead));
-        }
-
-        public Iterator<T> iterator() {
-            return new Iterator<T>() {
-                private Node<T> mNext = mHead;
-
-                @Override
-                public boolean hasNext() {
-                    return mNext != null;
-                }
-
-                @Override
-                public T next() {
-                    T ret = mNext.data;
-                    mNext = mNext.next;
-                    return ret;
-                }
-
-                @Override
-                public void remove() {
-                    throw new UnsupportedOperationException();
-                }
-            };
-        }
-
-        private static class Node<T> {
-            public final T data;
-            public final Node<T> next;
+    private List<AccessibilityNodeInfo> findMatches(HierarchySnapshot.Node[] roots) {
+        return obtain(new UiNodeMatcher(mSelector, mShortCircuit).findMatches(roots));
+    }
 
-            public Node(T d, Node<T> n) {
-                data = d;
-                next = n;
-            }
+    /** Obtains a copy of the {@link AccessibilityNodeInfo} of each of the snapshot nodes. */
+    private static List<AccessibilityNodeInfo> obtain(List<UiNode> matches) {
+        List<AccessibilityNodeInfo> ret = new ArrayList<AccessibilityNodeInfo>(matches.size());
+        for (UiNode match : matches) {
+            ret.add(AccessibilityNodeInfo.obtain(((HierarchySnapshot.Node)match).getInfo()));
         }
+        return ret;
     }
 }
@@ -16,9 +16,7 @@
 
 package android.support.test.uiautomator;
 
-import android.view.accessibility.AccessibilityNodeInfo;
-
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -28,12 +26,12 @@ import java.util.regex.Pattern;
  */
 public class BySelector {
 
-    // Regex patterns for String criteria
-    Pattern mClazz;
-    Pattern mDesc;
-    Pattern mPkg;
-    Pattern mRes;
-    Pattern mText;
+    // String criteria
+    StringCriterion mClazz;
+    StringCriterion mDesc;
+    StringCriterion mPkg;
+    StringCriterion mRes;
+    StringCriterion mText;
 
     // Boolean criteria
     Boolean mChecked;
@@ -51,7 +49,11 @@ public class BySelector {
     Integer mMaxDepth;
 
     // Child selectors
-    List<BySelector> mChildSelectors = new LinkedList<BySelector>();
+    List<BySelector> mChildSelectors = new ArrayList<BySelector>();
+
+    // Incremented by every change to the criteria, to invalidate the compiled plan
+    int mModCount;
+    private SelectorPlan mPlan;
 
 
     /** Clients should not instanciate this class directly. Use the {@link By} factory class instead. */
@@ -100,7 +102,7 @@ public class BySelector {
         if (className.charAt(0) == '.') {
             return clazz("android.widget", className.substring(1));
         } else {
-            return clazz(Pattern.compile(Pattern.quote(className)));
+            return setClazz(StringCriterion.equalTo(className));
         }
     }
 
@@ -117,8 +119,8 @@ public class BySelector {
         checkNotNull(packageName, "packageName cannot be null");
         checkNotNull(className, "className cannot be null");
 
-        return clazz(Pattern.compile(Pattern.quote(
-                String.format("%s.%s", packageName, className))));
+        return setClazz(StringCriterion.equalTo(
+                String.format("%s.%s", packageName, className)));
     }
 
     /**
@@ -131,7 +133,7 @@ public class BySelector {
     public BySelector clazz(Class clazz) {
         checkNotNull(clazz, "clazz cannot be null");
 
-        return clazz(Pattern.compile(Pattern.quote(clazz.getName())));
+        return setClazz(StringCriterion.equalTo(clazz.getName()));
     }
 
     /**
@@ -145,10 +147,15 @@ public class BySelector {
     public BySelector clazz(Pattern className) {
         checkNotNull(className, "className cannot be null");
 
+        return setClazz(StringCriterion.matches(className));
+    }
+
+    private BySelector setClazz(StringCriterion className) {
         if (mClazz != null) {
             throw new IllegalStateException("Class selector is already defined");
         }
         mClazz = className;
+        mModCount++;
         return this;
     }
 
@@ -163,7 +170,7 @@ public class BySelector {
     public BySelector desc(String contentDescription) {
         checkNotNull(contentDescription, "contentDescription cannot be null");
 
-        return desc(Pattern.compile(Pattern.quote(contentDescription)));
+        return setDesc(StringCriterion.equalTo(contentDescription));
     }
 
     /**
@@ -177,7 +184,7 @@ public class BySelector {
     public BySelector descContains(String substring) {
         checkNotNull(substring, "substring cannot be null");
 
-        return desc(Pattern.compile(String.format("^.*%s.*$", Pattern.quote(substring))));
+        return setDesc(StringCriterion.contains(substring));
     }
 
     /**
@@ -191,7 +198,7 @@ public class BySelector {
     public BySelector descStartsWith(String substring) {
         checkNotNull(substring, "substring cannot be null");
 
-        return desc(Pattern.compile(String.format("^%s.*$", Pattern.quote(substring))));
+        return setDesc(StringCriterion.startsWith(substring));
     }
 
     /**
@@ -205,7 +212,7 @@ public class BySelector {
     public BySelector descEndsWith(String substring) {
         checkNotNull(substring, "substring cannot be null");
 
-        return desc(Pattern.compile(String.format("^.*%s$", Pattern.quote(substring))));
+        return setDesc(StringCriterion.endsWith(substring));
     }
 
     /**
@@ -219,10 +226,15 @@ public class BySelector {
     public BySelector desc(Pattern contentDescription) {
         checkNotNull(contentDescription, "contentDescription cannot be null");
 
+        return setDesc(StringCriterion.matches(contentDescription));
+    }
+
+    private BySelector setDesc(StringCriterion contentDescription) {
         if (mDesc != null) {
             throw new IllegalStateException("Description selector is already defined");
         }
         mDesc = contentDescription;
+        mModCount++;
         return this;
     }
 
@@ -237,7 +249,7 @@ public class BySelector {
     public BySelector pkg(String applicationPackage) {
         checkNotNull(applicationPackage, "applicationPackage cannot be null");
 
-        return pkg(Pattern.compile(Pattern.quote(applicationPackage)));
+        return setPkg(StringCriterion.equalTo(applicationPackage));
     }
 
     /**
@@ -251,10 +263,15 @@ public class BySelector {
     public BySelector pkg(Pattern applicationPackage) {
         checkNotNull(applicationPackage, "applicationPackage cannot be null");
 
+        return setPkg(StringCriterion.matches(applicationPackage));
+    }
+
+    private BySelector setPkg(StringCriterion applicationPackage) {
         if (mPkg != null) {
             throw new IllegalStateException("Package selector is already defined");
         }
         mPkg = applicationPackage;
+        mModCount++;
         return this;
     }
 
@@ -269,7 +286,7 @@ public class BySelector {
     public BySelector res(String resourceName) {
         checkNotNull(resourceName, "resourceName cannot be null");
 
-        return res(Pattern.compile(Pattern.quote(resourceName)));
+        return setRes(StringCriterion.equalTo(resourceName));
     }
 
     /**
@@ -285,8 +302,8 @@ public class BySelector {
         checkNotNull(resourcePackage, "resourcePackage cannot be null");
         checkNotNull(resourceId, "resourceId cannot be null");
 
-        return res(Pattern.compile(Pattern.quote(
-                String.format("%s:id/%s", resourcePackage, resourceId))));
+        return setRes(StringCriterion.equalTo(
+                String.format("%s:id/%s", resourcePackage, resourceId)));
     }
 
     /**
@@ -300,10 +317,15 @@ public class BySelector {
     public BySelector res(Pattern resourceName) {
         checkNotNull(resourceName, "resourceName cannot be null");
 
+        return setRes(StringCriterion.matches(resourceName));
+    }
+
+    private BySelector setRes(StringCriterion resourceName) {
         if (mRes != null) {
             throw new IllegalStateException("Resource name selector is already defined");
         }
         mRes = resourceName;
+        mModCount++;
         return this;
     }
 
@@ -318,7 +340,7 @@ public class BySelector {
     public BySelector text(String textValue) {
         checkNotNull(textValue, "textValue cannot be null");
 
-        return text(Pattern.compile(Pattern.quote(textValue)));
+        return setText(StringCriterion.equalTo(textValue));
     }
 
     /**
@@ -332,7 +354,7 @@ public class BySelector {
     public BySelector textContains(String substring) {
         checkNotNull(substring, "substring cannot be null");
 
-        return text(Pattern.compile(String.format("^.*%s.*$", Pattern.quote(substring))));
+        return setText(StringCriterion.contains(substring));
     }
 
     /**
@@ -346,7 +368,7 @@ public class BySelector {
     public BySelector textStartsWith(String substring) {
         checkNotNull(substring, "substring cannot be null");
 
-        return text(Pattern.compile(String.format("^%s.*$", Pattern.quote(substring))));
+        return setText(StringCriterion.startsWith(substring));
     }
 
     /**
@@ -360,7 +382,7 @@ public class BySelector {
     public BySelector textEndsWith(String substring) {
         checkNotNull(substring, "substring cannot be null");
 
-        return text(Pattern.compile(String.format("^.*%s$", Pattern.quote(substring))));
+        return setText(StringCriterion.endsWith(substring));
     }
 
     /** Sets the text value criteria for matching. A UI element will be considered a match if its
@@ -373,10 +395,15 @@ public class BySelector {
     public BySelector text(Pattern textValue) {
         checkNotNull(textValue, "textValue cannot be null");
 
+        return setText(StringCriterion.matches(textValue));
+    }
+
+    private BySelector setText(StringCriterion textValue) {
         if (mText != null) {
             throw new IllegalStateException("Text selector is already defined");
         }
         mText = textValue;
+        mModCount++;
         return this;
     }
 
@@ -393,6 +420,7 @@ public class BySelector {
             throw new IllegalStateException("Checkable selector is already defined");
         }
         mCheckable = isCheckable;
+        mModCount++;
         return this;
     }
 
@@ -407,6 +435,7 @@ public class BySelector {
             throw new IllegalStateException("Checked selector is already defined");
         }
         mChecked = isChecked;
+        mModCount++;
         return this;
     }
 
@@ -422,6 +451,7 @@ public class BySelector {
             throw new IllegalStateException("Clickable selector is already defined");
         }
         mClickable = isClickable;
+        mModCount++;
         return this;
     }
     /**
@@ -435,6 +465,7 @@ public class BySelector {
             throw new IllegalStateException("Enabled selector is already defined");
         }
         mEnabled = isEnabled;
+        mModCount++;
         return this;
     }
 
@@ -450,6 +481,7 @@ public class BySelector {
             throw new IllegalStateException("Focusable selector is already defined");
         }
         mFocusable = isFocusable;
+        mModCount++;
         return this;
     }
 
@@ -464,6 +496,7 @@ public class BySelector {
             throw new IllegalStateException("Focused selector is already defined");
         }
         mFocused = isFocused;
+        mModCount++;
         return this;
     }
 
@@ -479,6 +512,7 @@ public class BySelector {
             throw new IllegalStateException("Long Clickable selector is already defined");
         }
         mLongClickable = isLongClickable;
+        mModCount++;
         return this;
     }
 
@@ -494,6 +528,7 @@ public class BySelector {
             throw new IllegalStateException("Scrollable selector is already defined");
         }
         mScrollable = isScrollable;
+        mModCount++;
         return this;
     }
 
@@ -509,6 +544,7 @@ public class BySelector {
             throw new IllegalStateException("Selected selector is already defined");
         }
         mSelected = isSelected;
+        mModCount++;
         return this;
     }
 
@@ -533,6 +569,7 @@ public class BySelector {
         }
         mMinDepth = min;
         mMaxDepth = max;
+        mModCount++;
         return this;
     }
 
@@ -545,6 +582,7 @@ public class BySelector {
             throw new IllegalStateException("Depth selector is already defined");
         }
         mMinDepth = min;
+        mModCount++;
         return this;
     }
 
@@ -557,6 +595,7 @@ public class BySelector {
             throw new IllegalStateException("Depth selector is already defined");
         }
         mMaxDepth = max;
+        mModCount++;
         return this;
     }
 
@@ -588,6 +627,7 @@ public class BySelector {
         checkNotNull(descendantSelector, "descendantSelector cannot be null");
 
         mChildSelectors.add(descendantSelector);
+        mModCount++;
         return this;
     }
 
@@ -605,10 +645,26 @@ public class BySelector {
         checkNotNull(descendantSelector, "descendantSelector cannot be null");
 
         descendantSelector.mMaxDepth = maxDepth;
+        descendantSelector.mModCount++;
         mChildSelectors.add(descendantSelector);
+        mModCount++;
         return this;
     }
 
+    /**
+     * Returns the compiled {@link SelectorPlan} for this selector and its child selectors. The plan
+     * is cached, and only compiled again after this selector or one of its child selectors has
+     * been modified.
+     */
+    SelectorPlan compile() {
+        SelectorPlan plan = mPlan;
+        if (plan == null || !plan.isCurrent()) {
+            plan = new SelectorPlan(this);
+            mPlan = plan;
+        }
+        return plan;
+    }
+
     /**
      * Returns a {@link String} representation of this {@link BySelector}. The format is
      * "BySelector [&lt;KEY&gt;='&lt;VALUE&gt; ... ]". Each criteria is listed as a key-value pair
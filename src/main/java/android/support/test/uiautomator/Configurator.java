@@ -39,6 +39,18 @@ public final class Configurator {
     // Default is inject as fast as we can
     private long mKeyInjectionDelay = 0; // ms
 
+    // Fetch each window's hierarchy on a separate thread
+    private boolean mParallelWindowSearch = false;
+
+    // Scroll UiObject2s with accessibility actions instead of gestures where possible
+    private boolean mAccessibilityScroll = false;
+
+    // Search for UiSelectors in the hierarchy snapshot shared with BySelector searches
+    private boolean mUiSelectorSnapshotSearch = false;
+
+    // Decides when the UI is idle before each action
+    private IdleStrategy mIdleStrategy = IdleStrategy.quietPeriod(IdleStrategy.DEFAULT_QUIET_TIME);
+
     // reference to self
     private static Configurator sConfigurator;
 
@@ -222,4 +234,116 @@ public final class Configurator {
     public long getKeyInjectionDelay() {
         return mKeyInjectionDelay;
     }
+
+    /**
+     * Enables or disables fetching the hierarchy of each window concurrently when searching with
+     * a {@link BySelector}.
+     *
+     * On devices with several windows (status bar, navigation bar, input method and application)
+     * each window's hierarchy is fetched from a different process, so the fetches can overlap.
+     * Results are still returned in window z-order.
+     *
+     * @param enabled true to fetch windows concurrently; false to fetch them one at a time
+     * @return self
+     */
+    public Configurator setParallelWindowSearchEnabled(boolean enabled) {
+        mParallelWindowSearch = enabled;
+        return this;
+    }
+
+    /**
+     * Returns whether the hierarchy of each window is fetched concurrently when searching with a
+     * {@link BySelector}.
+     *
+     * @return true if windows are fetched concurrently
+     */
+    public boolean isParallelWindowSearchEnabled() {
+        return mParallelWindowSearch;
+    }
+
+    /**
+     * Enables or disables scrolling with accessibility actions in
+     * {@link UiObject2#scroll(Direction, float)} and {@link UiObject2#fling(Direction)}.
+     *
+     * When enabled, objects which expose the {@code ACTION_SCROLL_FORWARD} or
+     * {@code ACTION_SCROLL_BACKWARD} accessibility action for the requested direction are
+     * scrolled by performing the action directly, and only the resulting scroll event is waited
+     * for, rather than injecting a swipe gesture and waiting for it to play out. Each action
+     * scrolls by about one page, regardless of the percentage or speed requested. Down and right
+     * scroll forward, up and left scroll backward. Objects without the action are still scrolled
+     * with gestures.
+     *
+     * @param enabled true to scroll with accessibility actions; false to always use gestures
+     * @return self
+     */
+    public Configurator setAccessibilityScrollEnabled(boolean enabled) {
+        mAccessibilityScroll = enabled;
+        return this;
+    }
+
+    /**
+     * Returns whether {@link UiObject2} scrolls with accessibility actions where possible.
+     *
+     * @return true if accessibility actions are used to scroll
+     */
+    public boolean isAccessibilityScrollEnabled() {
+        return mAccessibilityScroll;
+    }
+
+    /**
+     * Enables or disables searching for the {@link UiSelector} of {@link UiObject},
+     * {@link UiCollection} and {@link UiScrollable} in the same cached hierarchy snapshot that
+     * {@link BySelector} searches use.
+     *
+     * The snapshot is captured once and reused until an accessibility event indicates that the
+     * user interface changed, so repeated queries against an unchanged screen do not fetch the
+     * hierarchy again. Searches find the same elements as before. Capturing the snapshot reads
+     * every visible element of every window, so this is slower for a screen which is only
+     * searched once, such as the searches {@link UiScrollable} makes after each scroll.
+     *
+     * @param enabled true to search the shared snapshot; false to search the active window
+     * directly
+     * @return self
+     */
+    public Configurator setUiSelectorSnapshotSearchEnabled(boolean enabled) {
+        mUiSelectorSnapshotSearch = enabled;
+        return this;
+    }
+
+    /**
+     * Returns whether {@link UiSelector} searches use the hierarchy snapshot shared with
+     * {@link BySelector} searches.
+     *
+     * @return true if the shared snapshot is searched
+     */
+    public boolean isUiSelectorSnapshotSearchEnabled() {
+        return mUiSelectorSnapshotSearch;
+    }
+
+    /**
+     * Sets the strategy used to decide when the user interface is idle. uiautomator waits for
+     * the idle state before nearly every query and action, so this has a large effect on test
+     * execution speed. By default, the user interface is considered idle once no accessibility
+     * events have been received for 500 milliseconds.
+     * See {@link IdleStrategy#adaptive()} and {@link IdleStrategy#eventCount(int, int)}
+     *
+     * @param strategy The strategy to use
+     * @return self
+     */
+    public Configurator setIdleStrategy(IdleStrategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("strategy cannot be null");
+        }
+        mIdleStrategy = strategy;
+        return this;
+    }
+
+    /**
+     * Gets the strategy used to decide when the user interface is idle.
+     *
+     * @return current idle strategy
+     */
+    public IdleStrategy getIdleStrategy() {
+        return mIdleStrategy;
+    }
 }
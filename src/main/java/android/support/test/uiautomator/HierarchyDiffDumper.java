@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dumps the differences between the current window hierarchy and the one seen by the previous
+ * call. Nodes are identified by their window id and the path of child indices from the window
+ * root, e.g. {@code "12:0/3/1"}. The output has the form:
+ * <pre>
+ * &lt;hierarchy-diff rotation="0"&gt;
+ *   &lt;removed id="12:0/3/2" /&gt;
+ *   &lt;inserted id="12:0/3/4" index="4" text="OK" ... /&gt;
+ *   &lt;changed id="12:0/3/1" checked="true" /&gt;
+ * &lt;/hierarchy-diff&gt;
+ * </pre>
+ * Inserted nodes carry every attribute written by {@link AccessibilityNodeInfoDumper}, changed
+ * nodes only the attributes whose value changed. The first dump reports every node as inserted.
+ * This class has no Android dependencies.
+ */
+class HierarchyDiffDumper {
+
+    // Attribute values of each node seen by the previous dump, keyed by node id
+    private Map<String, String[]> mPrevious = new LinkedHashMap<String, String[]>();
+
+    /**
+     * Writes the differences between the hierarchy under the window {@code roots} and the one
+     * passed to the previous call to {@code out}.
+     *
+     * @param serializer The serializer used to write the XML.
+     * @param windowIds The id of the window of each of the {@code roots}.
+     * @param rotation The display rotation, written as an attribute of the diff.
+     * @param width The display width, to which the node bounds are clipped.
+     * @param height The display height, to which the node bounds are clipped.
+     */
+    public synchronized void dumpWindowHierarchyDiff(XmlSerializer serializer, OutputStream out,
+            UiNode[] roots, int[] windowIds, int rotation, int width, int height)
+            throws IOException {
+        Map<String, String[]> current = new LinkedHashMap<String, String[]>();
+        StringBuilder path = new StringBuilder();
+        Set<UiNode> nafNodes = AccessibilityNodeInfoDumper.findNafNodes(roots);
+        int[] bounds = new int[4];
+        for (int i = 0; i < roots.length; i++) {
+            path.setLength(0);
+            path.append(windowIds[i]).append(':');
+            collectNodeRec(roots[i], 0, path, nafNodes, current, width, height, bounds);
+        }
+
+        serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        serializer.setOutput(out, "UTF-8");
+
+        serializer.startDocument("UTF-8", true);
+        serializer.startTag("", "hierarchy-diff");
+        serializer.attribute("", "rotation", Integer.toString(rotation));
+
+        for (String id : mPrevious.keySet()) {
+            if (!current.containsKey(id)) {
+                serializer.startTag("", "removed");
+                serializer.attribute("", "id", id);
+                serializer.endTag("", "removed");
+            }
+        }
+        for (Map.Entry<String, String[]> entry : current.entrySet()) {
+            String[] previous = mPrevious.get(entry.getKey());
+            String[] attributes = entry.getValue();
+            if (previous == null) {
+                writeNode(serializer, "inserted", entry.getKey(), attributes, null);
+            } else if (!Arrays.equals(previous, attributes)) {
+                writeNode(serializer, "changed", entry.getKey(), attributes, previous);
+            }
+        }
+
+        serializer.endTag("", "hierarchy-diff");
+        serializer.endDocument();
+
+        mPrevious = current;
+    }
+
+    private static void collectNodeRec(UiNode node, int index, StringBuilder path,
+            Set<UiNode> nafNodes, Map<String, String[]> nodes, int width, int height,
+            int[] bounds) {
+        int length = path.length();
+        path.append(index);
+        // The attributes are kept until the next diff, so each node needs its own array
+        String[] attributes = new String[AccessibilityNodeInfoDumper.ATTRIBUTE_NAMES.length];
+        AccessibilityNodeInfoDumper.getAttributes(node, index, nafNodes.contains(node), width,
+                height, bounds, attributes);
+        nodes.put(path.toString(), attributes);
+
+        path.append('/');
+        int count = node.getChildCount();
+        for (int i = 0; i < count; i++) {
+            UiNode child = node.getChild(i);
+            collectNodeRec(child, child.getIndex(), path, nafNodes, nodes, width, height,
+                    bounds);
+        }
+        path.setLength(length);
+    }
+
+    /** Writes the attributes of a node, skipping those equal to {@code previous} if given. */
+    private static void writeNode(XmlSerializer serializer, String tag, String id,
+            String[] attributes, String[] previous) throws IOException {
+        serializer.startTag("", tag);
+        serializer.attribute("", "id", id);
+        for (int i = 0; i < attributes.length; i++) {
+            String value = attributes[i];
+            if (previous != null) {
+                if (value == null ? previous[i] == null : value.equals(previous[i])) {
+                    continue;
+                }
+                if (value == null) {
+                    // Only NAF is ever omitted, so report that it no longer applies
+                    value = Boolean.toString(false);
+                }
+            }
+            if (value != null) {
+                serializer.attribute("", AccessibilityNodeInfoDumper.ATTRIBUTE_NAMES[i], value);
+            }
+        }
+        serializer.endTag("", tag);
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import android.graphics.Rect;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable, in-memory copy of the visible {@link AccessibilityNodeInfo} hierarchy. A snapshot
+ * is captured once per UI generation (see {@link QueryController#getHierarchyGeneration()}) and
+ * is shared by every {@link BySelector} query made until an accessibility event invalidates it.
+ * Searching a snapshot only reads attributes from local copies of the nodes, so repeated queries
+ * against an unchanged screen do not need to fetch the hierarchy again.
+ * <p/>
+ * The captured {@link AccessibilityNodeInfo}s are never recycled, not even once a newer snapshot
+ * replaces this one. Queries hold on to {@link Node}s, or just to the array returned by
+ * {@link #getRoots()}, without holding on to the snapshot, so there is no point at which the
+ * snapshot knows that no caller can reach its nodes any more. Recycling only returns a node to
+ * a small shared pool, from which it would be handed out again for an unrelated view while such
+ * a caller still reads it. Unrecycled nodes hold no other resources and are simply garbage
+ * collected.
+ */
+class HierarchySnapshot {
+
+    private static final String TAG = HierarchySnapshot.class.getSimpleName();
+
+    // Upper bound on the number of windows captured at the same time in parallel mode
+    private static final int MAX_CAPTURE_THREADS = 4;
+    private static ThreadPoolExecutor sCaptureExecutor;
+
+    private final long mGeneration;
+    private final Node[] mRoots;
+    private final Map<AccessibilityNodeInfo, Node> mNodes;
+
+    // Lookup tables keyed by exact attribute value. Built on first use, since most snapshots are
+    // only searched with selectors that cannot use them.
+    private Map<String, List<Node>> mNodesByResourceName;
+    private Map<String, List<Node>> mNodesByClassName;
+    private Map<String, List<Node>> mNodesByText;
+
+    private final int mFetchCount;
+
+    private HierarchySnapshot(long generation, Node[] roots,
+            Map<AccessibilityNodeInfo, Node> nodes, int fetchCount) {
+        mGeneration = generation;
+        mRoots = roots;
+        mNodes = nodes;
+        mFetchCount = fetchCount;
+    }
+
+    /**
+     * Captures the hierarchy under each of the {@code roots}. Invisible children are not captured,
+     * since neither {@link ByMatcher} nor {@link AccessibilityNodeInfoDumper} look at them.
+     *
+     * @param generation The UI generation that was current before the capture started.
+     * @param roots The nodes from which to start the capture. These are copied, not retained.
+     * @return A new {@link HierarchySnapshot}.
+     */
+    static HierarchySnapshot capture(long generation, AccessibilityNodeInfo... roots) {
+        if (roots.length > 1 && Configurator.getInstance().isParallelWindowSearchEnabled()) {
+            return captureInParallel(generation, roots);
+        }
+
+        Map<AccessibilityNodeInfo, Node> nodes = new HashMap<AccessibilityNodeInfo, Node>();
+        Node[] captured = new Node[roots.length];
+        int fetchCount = 0;
+        for (int i = 0; i < roots.length; i++) {
+            TreeLoader loader = new TreeLoader(roots[i]);
+            captured[i] = loader.call();
+            nodes.putAll(loader.mNodes);
+            fetchCount += loader.mFetchCount;
+        }
+        return new HierarchySnapshot(generation, captured, nodes, fetchCount);
+    }
+
+    /**
+     * Captures each of the {@code roots} on a separate thread. The results are merged in the order
+     * of {@code roots}, which for window roots is their z-order.
+     */
+    private static HierarchySnapshot captureInParallel(long generation,
+            AccessibilityNodeInfo... roots) {
+
+        ThreadPoolExecutor executor = getCaptureExecutor();
+        List<TreeLoader> loaders = new ArrayList<TreeLoader>(roots.length);
+        List<Future<Node>> futures = new ArrayList<Future<Node>>(roots.length);
+        for (AccessibilityNodeInfo root : roots) {
+            TreeLoader loader = new TreeLoader(root);
+            loaders.add(loader);
+            futures.add(executor.submit(loader));
+        }
+
+        Map<AccessibilityNodeInfo, Node> nodes = new HashMap<AccessibilityNodeInfo, Node>();
+        Node[] captured = new Node[roots.length];
+        int fetchCount = 0;
+        try {
+            for (int i = 0; i < roots.length; i++) {
+                captured[i] = futures.get(i).get();
+                nodes.putAll(loaders.get(i).mNodes);
+                fetchCount += loaders.get(i).mFetchCount;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while capturing the hierarchy", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new IllegalStateException("Failed to capture the hierarchy", cause);
+        } finally {
+            // Don't leave the remaining windows running if we bailed out early
+            for (Future<Node> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return new HierarchySnapshot(generation, captured, nodes, fetchCount);
+    }
+
+    private static synchronized ThreadPoolExecutor getCaptureExecutor() {
+        if (sCaptureExecutor == null) {
+            sCaptureExecutor = new ThreadPoolExecutor(MAX_CAPTURE_THREADS, MAX_CAPTURE_THREADS,
+                    5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, TAG);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            sCaptureExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sCaptureExecutor;
+    }
+
+    /**
+     * Loads the visible tree under a single root into {@link Node}s. Each loader fills its own
+     * lookup table, so loaders can run on different threads without sharing state.
+     * <p/>
+     * The tree is fetched breadth first, a whole level before the next, and the nodes are built
+     * bottom up once fetching is done. Every {@link AccessibilityNodeInfo#getChild(int)} call is
+     * counted in {@link #getFetchCount()}; a call is either served from the framework's cache or
+     * is a round-trip to the app. The count is the same for any traversal order, since each
+     * visible node's children are requested exactly once. How many of the calls are round-trips
+     * has not been measured, so no saving over a depth-first walk is claimed.
+     */
+    private static class TreeLoader implements Callable<Node> {
+        private final AccessibilityNodeInfo mRoot;
+        private final Map<AccessibilityNodeInfo, Node> mNodes =
+                new HashMap<AccessibilityNodeInfo, Node>();
+        private int mFetchCount = 0;
+
+        TreeLoader(AccessibilityNodeInfo root) {
+            mRoot = root;
+        }
+
+        @Override
+        public Node call() {
+            // Fetch every visible node, breadth first
+            List<PendingNode> fetched = new ArrayList<PendingNode>();
+            LinkedList<PendingNode> queue = new LinkedList<PendingNode>();
+            queue.add(new PendingNode(AccessibilityNodeInfo.obtain(mRoot), 0, 0));
+            while (!queue.isEmpty()) {
+                PendingNode pending = queue.removeFirst();
+                fetched.add(pending);
+
+                AccessibilityNodeInfo info = pending.mInfo;
+                int numChildren = info.getChildCount();
+                boolean hasNullChild = false;
+                for (int i = 0; i < numChildren; i++) {
+                    AccessibilityNodeInfo child = info.getChild(i);
+                    mFetchCount++;
+                    if (child == null) {
+                        if (!hasNullChild) {
+                            Log.w(TAG, String.format("Node returned null child: %s",
+                                    info.toString()));
+                        }
+                        hasNullChild = true;
+                        Log.w(TAG, String.format("Skipping null child (%s of %s)", i,
+                                numChildren));
+                        continue;
+                    }
+                    if (!child.isVisibleToUser()) {
+                        child.recycle();
+                        continue;
+                    }
+                    PendingNode pendingChild = new PendingNode(child, i, pending.mDepth + 1);
+                    pending.mChildren.add(pendingChild);
+                    queue.add(pendingChild);
+                }
+            }
+
+            // Build the immutable nodes bottom up, so each node's children already exist
+            Rect bounds = new Rect();
+            for (int i = fetched.size() - 1; i >= 0; i--) {
+                PendingNode pending = fetched.get(i);
+                Node[] children = new Node[pending.mChildren.size()];
+                for (int j = 0; j < children.length; j++) {
+                    children[j] = pending.mChildren.get(j).mNode;
+                }
+                pending.mInfo.getBoundsInScreen(bounds);
+                pending.mNode = new Node(pending.mInfo, pending.mIndex, pending.mDepth, children,
+                        bounds);
+                mNodes.put(pending.mInfo, pending.mNode);
+            }
+            // Parents were fetched before their children
+            for (PendingNode pending : fetched) {
+                Node node = pending.mNode;
+                node.mRoot = node.mParent != null ? node.mParent.mRoot : node;
+            }
+            return fetched.get(0).mNode;
+        }
+    }
+
+    /** A node which has been fetched, but whose {@link Node} has not been built yet. */
+    private static class PendingNode {
+        private final AccessibilityNodeInfo mInfo;
+        private final int mIndex;
+        private final int mDepth;
+        private final List<PendingNode> mChildren = new ArrayList<PendingNode>();
+        private Node mNode;
+
+        PendingNode(AccessibilityNodeInfo info, int index, int depth) {
+            mInfo = info;
+            mIndex = index;
+            mDepth = depth;
+        }
+    }
+
+    /**
+     * Returns the number of {@link AccessibilityNodeInfo#getChild(int)} calls made while capturing
+     * this snapshot. Each one is at most one round-trip to the process that owns the window.
+     */
+    int getFetchCount() {
+        return mFetchCount;
+    }
+
+    /** Returns the number of nodes in this snapshot. */
+    int getNodeCount() {
+        return mNodes.size();
+    }
+
+    /** Returns the UI generation this snapshot was captured in. */
+    long getGeneration() {
+        return mGeneration;
+    }
+
+    /** Returns the captured window roots, in the order they were provided. */
+    Node[] getRoots() {
+        return mRoots;
+    }
+
+    /**
+     * Returns the captured {@link Node} which represents the same view as {@code info}, or null if
+     * it is not part of this snapshot.
+     */
+    Node getNode(AccessibilityNodeInfo info) {
+        return mNodes.get(info);
+    }
+
+    /**
+     * Returns the visible nodes whose resource name is exactly {@code resourceName}. Nodes are
+     * returned in the order in which a depth-first search of the roots would complete them.
+     */
+    List<Node> getNodesByResourceName(String resourceName) {
+        buildIndex();
+        return lookup(mNodesByResourceName, resourceName);
+    }
+
+    /** Returns the visible nodes whose class name is exactly {@code className}. */
+    List<Node> getNodesByClassName(String className) {
+        buildIndex();
+        return lookup(mNodesByClassName, className);
+    }
+
+    /** Returns the visible nodes whose text is exactly {@code text}. */
+    List<Node> getNodesByText(String text) {
+        buildIndex();
+        return lookup(mNodesByText, text);
+    }
+
+    private static List<Node> lookup(Map<String, List<Node>> index, String key) {
+        List<Node> ret = index.get(key);
+        return ret != null ? ret : Collections.<Node>emptyList();
+    }
+
+    private synchronized void buildIndex() {
+        if (mNodesByResourceName != null) {
+            return;
+        }
+        mNodesByResourceName = new HashMap<String, List<Node>>();
+        mNodesByClassName = new HashMap<String, List<Node>>();
+        mNodesByText = new HashMap<String, List<Node>>();
+        for (Node root : mRoots) {
+            indexNode(root);
+        }
+    }
+
+    /** Adds the subtree under {@code node} to the lookup tables, children first. */
+    private void indexNode(Node node) {
+        for (Node child : node.mChildren) {
+            indexNode(child);
+        }
+
+        // Only the roots can be invisible, and they are never searched
+        AccessibilityNodeInfo info = node.getInfo();
+        if (!info.isVisibleToUser()) {
+            return;
+        }
+        addToIndex(mNodesByResourceName, info.getViewIdResourceName(), node);
+        addToIndex(mNodesByClassName, info.getClassName(), node);
+        addToIndex(mNodesByText, info.getText(), node);
+    }
+
+    private static void addToIndex(Map<String, List<Node>> index, CharSequence key, Node node) {
+        if (key == null) {
+            return;
+        }
+        String value = key.toString();
+        List<Node> nodes = index.get(value);
+        if (nodes == null) {
+            nodes = new ArrayList<Node>();
+            index.put(value, nodes);
+        }
+        nodes.add(node);
+    }
+
+    /**
+     * A single captured node and its visible children. Adapts the captured
+     * {@link AccessibilityNodeInfo} to the {@link UiNode} interface.
+     */
+    static class Node implements UiNode {
+        private final AccessibilityNodeInfo mInfo;
+        private final int mIndex;
+        private final int mDepth;
+        private final Node[] mChildren;
+        private final int mSubtreeSize;
+        private Node mParent;
+        private Node mRoot;
+
+        // Bounds in screen, read once at capture so the dumpers don't need a Rect per node
+        private final int mLeft;
+        private final int mTop;
+        private final int mRight;
+        private final int mBottom;
+
+        private Node(AccessibilityNodeInfo info, int index, int depth, Node[] children,
+                Rect bounds) {
+            mInfo = info;
+            mIndex = index;
+            mDepth = depth;
+            mChildren = children;
+            mLeft = bounds.left;
+            mTop = bounds.top;
+            mRight = bounds.right;
+            mBottom = bounds.bottom;
+            int subtreeSize = 1;
+            for (Node child : children) {
+                child.mParent = this;
+                subtreeSize += child.mSubtreeSize;
+            }
+            mSubtreeSize = subtreeSize;
+        }
+
+        /**
+         * Returns the captured {@link AccessibilityNodeInfo}. It is owned by the snapshot and must
+         * not be recycled; use {@link AccessibilityNodeInfo#obtain(AccessibilityNodeInfo)} to hand
+         * it out.
+         */
+        AccessibilityNodeInfo getInfo() {
+            return mInfo;
+        }
+
+        @Override
+        public int getIndex() {
+            return mIndex;
+        }
+
+        /** Returns the distance between this node and the root it was captured from. */
+        int getDepth() {
+            return mDepth;
+        }
+
+        /** Returns the captured parent of this node, or null if it is a root. */
+        @Override
+        public Node getParent() {
+            return mParent;
+        }
+
+        /** Returns the root this node was captured from, which is the node itself for a root. */
+        Node getRoot() {
+            return mRoot;
+        }
+
+        /** Returns the number of captured nodes in the subtree under this node, including it. */
+        int getSubtreeSize() {
+            return mSubtreeSize;
+        }
+
+        @Override
+        public int getChildCount() {
+            return mChildren.length;
+        }
+
+        @Override
+        public Node getChild(int i) {
+            return mChildren[i];
+        }
+
+        @Override
+        public CharSequence getText() {
+            return mInfo.getText();
+        }
+
+        @Override
+        public CharSequence getContentDescription() {
+            return mInfo.getContentDescription();
+        }
+
+        @Override
+        public CharSequence getClassName() {
+            return mInfo.getClassName();
+        }
+
+        @Override
+        public CharSequence getPackageName() {
+            return mInfo.getPackageName();
+        }
+
+        @Override
+        public String getResourceName() {
+            return mInfo.getViewIdResourceName();
+        }
+
+        @Override
+        public boolean isCheckable() {
+            return mInfo.isCheckable();
+        }
+
+        @Override
+        public boolean isChecked() {
+            return mInfo.isChecked();
+        }
+
+        @Override
+        public boolean isClickable() {
+            return mInfo.isClickable();
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return mInfo.isEnabled();
+        }
+
+        @Override
+        public boolean isFocusable() {
+            return mInfo.isFocusable();
+        }
+
+        @Override
+        public boolean isFocused() {
+            return mInfo.isFocused();
+        }
+
+        @Override
+        public boolean isScrollable() {
+            return mInfo.isScrollable();
+        }
+
+        @Override
+        public boolean isLongClickable() {
+            return mInfo.isLongClickable();
+        }
+
+        @Override
+        public boolean isPassword() {
+            return mInfo.isPassword();
+        }
+
+        @Override
+        public boolean isSelected() {
+            return mInfo.isSelected();
+        }
+
+        @Override
+        public boolean isVisibleToUser() {
+            return mInfo.isVisibleToUser();
+        }
+
+        @Override
+        public void getBoundsInScreen(int[] outBounds) {
+            outBounds[0] = mLeft;
+            outBounds[1] = mTop;
+            outBounds[2] = mRight;
+            outBounds[3] = mBottom;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import android.os.SystemClock;
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decides when the user interface is idle, which uiautomator waits for before nearly every query
+ * and action. Use {@link Configurator#setIdleStrategy(IdleStrategy)} to select a strategy.
+ */
+public abstract class IdleStrategy {
+
+    /**
+     * This value has the greatest bearing on the appearance of test execution speeds.
+     * This value is used as the minimum time to wait before considering the UI idle after
+     * each action.
+     */
+    static final long DEFAULT_QUIET_TIME = 500; // ms
+
+    IdleStrategy() {
+        /* only the strategies below are supported */
+    }
+
+    /**
+     * Returns a strategy which considers the user interface idle once no accessibility events
+     * have been received for {@code quietTime} milliseconds. This is the default, with a quiet
+     * time of 500 milliseconds.
+     *
+     * @param quietTime Quiet time in milliseconds
+     */
+    public static IdleStrategy quietPeriod(long quietTime) {
+        if (quietTime < 0) {
+            throw new IllegalArgumentException("quietTime cannot be negative");
+        }
+        return new QuietPeriodStrategy(quietTime);
+    }
+
+    /**
+     * Returns a strategy which learns how far apart the accessibility events within a burst
+     * typically are for each application, and considers the user interface idle once no events
+     * have been received for a few times that gap. Applications which send their events in quick
+     * succession are therefore considered idle much sooner than with the 500 millisecond default,
+     * which remains the upper bound.
+     */
+    public static IdleStrategy adaptive() {
+        return new AdaptiveStrategy();
+    }
+
+    /**
+     * Returns a strategy for applications which are known to send a fixed number of events when
+     * they finish updating. The user interface is considered idle once {@code count} events of the
+     * given types have been received since it was last found idle, or once no events have been
+     * received for 500 milliseconds, whichever happens first.
+     *
+     * @param eventTypes Mask of {@link AccessibilityEvent} types to count
+     * @param count Number of events that signal the user interface is idle. Must be positive.
+     */
+    public static IdleStrategy eventCount(int eventTypes, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        return new EventCountStrategy(eventTypes, count);
+    }
+
+    /** Called for every accessibility event received while this strategy is in use. */
+    void onAccessibilityEvent(AccessibilityEvent event) {
+    }
+
+    /**
+     * Blocks until the user interface is idle, or until {@code timeout} expires.
+     *
+     * @return true if the user interface is idle, false if the timeout expired first
+     */
+    abstract boolean waitForIdle(UiAutomatorBridge bridge, long timeout);
+
+    /** Relies on {@link android.app.UiAutomation#waitForIdle(long, long)}. */
+    private static class QuietPeriodStrategy extends IdleStrategy {
+        private final long mQuietTime;
+
+        QuietPeriodStrategy(long quietTime) {
+            mQuietTime = quietTime;
+        }
+
+        @Override
+        boolean waitForIdle(UiAutomatorBridge bridge, long timeout) {
+            try {
+                bridge.waitForQuietPeriod(mQuietTime, timeout);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            }
+        }
+    }
+
+    /** Base class for strategies which track accessibility events themselves. */
+    private abstract static class EventDrivenStrategy extends IdleStrategy {
+        // Time of the last event, in SystemClock.uptimeMillis() time base
+        long mLastEventTime = SystemClock.uptimeMillis();
+
+        @Override
+        synchronized void onAccessibilityEvent(AccessibilityEvent event) {
+            long now = SystemClock.uptimeMillis();
+            onEvent(event, now);
+            mLastEventTime = now;
+            notifyAll();
+        }
+
+        /** Called with this strategy locked, before {@link #mLastEventTime} is updated. */
+        abstract void onEvent(AccessibilityEvent event, long eventTime);
+
+        /**
+         * Returns the time at which the user interface will be idle if no more events arrive.
+         * Called with this strategy locked.
+         */
+        abstract long getIdleTime();
+
+        /** Called with this strategy locked once the user interface is found idle. */
+        void onIdle() {
+        }
+
+        @Override
+        synchronized boolean waitForIdle(UiAutomatorBridge bridge, long timeout) {
+            long deadline = SystemClock.uptimeMillis() + timeout;
+            while (true) {
+                long now = SystemClock.uptimeMillis();
+                long idleTime = getIdleTime();
+                if (now >= idleTime) {
+                    onIdle();
+                    return true;
+                }
+                if (now >= deadline) {
+                    return false;
+                }
+                try {
+                    wait(Math.min(idleTime, deadline) - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static class AdaptiveStrategy extends EventDrivenStrategy {
+        private static final long MIN_QUIET_TIME = 50; // ms
+        private static final long MAX_QUIET_TIME = DEFAULT_QUIET_TIME;
+        // The quiet time is this many times the typical gap between events in a burst
+        private static final int GAP_MULTIPLIER = 3;
+
+        // Typical gap between events in a burst, by package name
+        private final Map<String, Long> mTypicalGaps = new HashMap<String, Long>();
+        private String mLastPackage;
+
+        @Override
+        void onEvent(AccessibilityEvent event, long eventTime) {
+            CharSequence packageName = event.getPackageName();
+            String pkg = packageName != null ? packageName.toString() : "";
+            long gap = eventTime - mLastEventTime;
+            if (gap < MAX_QUIET_TIME && pkg.equals(mLastPackage)) {
+                // Same burst. Adapt quickly to longer gaps, so that slow bursts are not cut short,
+                // and slowly to shorter ones.
+                Long typical = mTypicalGaps.get(pkg);
+                if (typical == null) {
+                    typical = gap;
+                } else if (gap > typical) {
+                    typical = (typical + gap) / 2;
+                } else {
+                    typical = (typical * 7 + gap) / 8;
+                }
+                mTypicalGaps.put(pkg, typical);
+            }
+            mLastPackage = pkg;
+        }
+
+        @Override
+        long getIdleTime() {
+            Long typical = mTypicalGaps.get(mLastPackage);
+            long quietTime = MAX_QUIET_TIME;
+            if (typical != null) {
+                quietTime = Math.max(MIN_QUIET_TIME,
+                        Math.min(MAX_QUIET_TIME, typical * GAP_MULTIPLIER));
+            }
+            return mLastEventTime + quietTime;
+        }
+    }
+
+    private static class EventCountStrategy extends EventDrivenStrategy {
+        private final int mEventTypes;
+        private final int mCount;
+        private int mReceived;
+
+        EventCountStrategy(int eventTypes, int count) {
+            mEventTypes = eventTypes;
+            mCount = count;
+        }
+
+        @Override
+        void onEvent(AccessibilityEvent event, long eventTime) {
+            if ((event.getEventType() & mEventTypes) != 0) {
+                mReceived++;
+            }
+        }
+
+        @Override
+        long getIdleTime() {
+            if (mReceived >= mCount) {
+                return 0;
+            }
+            return mLastEventTime + DEFAULT_QUIET_TIME;
+        }
+
+        @Override
+        void onIdle() {
+            mReceived = 0;
+        }
+    }
+}
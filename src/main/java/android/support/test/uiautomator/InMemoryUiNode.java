@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mutable {@link UiNode} which holds its attributes in memory. Used to build hierarchies for
+ * benchmarking and testing the matching and dumping code without a device.
+ */
+class InMemoryUiNode implements UiNode {
+
+    private final int mIndex;
+    private InMemoryUiNode mParent;
+    private final List<InMemoryUiNode> mChildren = new ArrayList<InMemoryUiNode>();
+    private CharSequence mText;
+    private CharSequence mContentDescription;
+    private CharSequence mClassName;
+    private CharSequence mPackageName;
+    private String mResourceName;
+    private boolean mCheckable;
+    private boolean mChecked;
+    private boolean mClickable;
+    private boolean mEnabled = true;
+    private boolean mFocusable;
+    private boolean mFocused;
+    private boolean mScrollable;
+    private boolean mLongClickable;
+    private boolean mPassword;
+    private boolean mSelected;
+    private boolean mVisibleToUser = true;
+    private final int[] mBounds = new int[4];
+
+    InMemoryUiNode(int index) {
+        mIndex = index;
+    }
+
+    /** Creates a child with the next index, appends it to this node and returns it. */
+    InMemoryUiNode addChild() {
+        InMemoryUiNode child = new InMemoryUiNode(mChildren.size());
+        child.mParent = this;
+        mChildren.add(child);
+        return child;
+    }
+
+    @Override
+    public int getIndex() {
+        return mIndex;
+    }
+
+    @Override
+    public InMemoryUiNode getParent() {
+        return mParent;
+    }
+
+    @Override
+    public int getChildCount() {
+        return mChildren.size();
+    }
+
+    @Override
+    public InMemoryUiNode getChild(int i) {
+        return mChildren.get(i);
+    }
+
+    @Override
+    public CharSequence getText() {
+        return mText;
+    }
+
+    InMemoryUiNode setText(CharSequence text) {
+        mText = text;
+        return this;
+    }
+
+    @Override
+    public CharSequence getContentDescription() {
+        return mContentDescription;
+    }
+
+    InMemoryUiNode setContentDescription(CharSequence contentDescription) {
+        mContentDescription = contentDescription;
+        return this;
+    }
+
+    @Override
+    public CharSequence getClassName() {
+        return mClassName;
+    }
+
+    InMemoryUiNode setClassName(CharSequence className) {
+        mClassName = className;
+        return this;
+    }
+
+    @Override
+    public CharSequence getPackageName() {
+        return mPackageName;
+    }
+
+    InMemoryUiNode setPackageName(CharSequence packageName) {
+        mPackageName = packageName;
+        return this;
+    }
+
+    @Override
+    public String getResourceName() {
+        return mResourceName;
+    }
+
+    InMemoryUiNode setResourceName(String resourceName) {
+        mResourceName = resourceName;
+        return this;
+    }
+
+    @Override
+    public boolean isCheckable() {
+        return mCheckable;
+    }
+
+    InMemoryUiNode setCheckable(boolean checkable) {
+        mCheckable = checkable;
+        return this;
+    }
+
+    @Override
+    public boolean isChecked() {
+        return mChecked;
+    }
+
+    InMemoryUiNode setChecked(boolean checked) {
+        mChecked = checked;
+        return this;
+    }
+
+    @Override
+    public boolean isClickable() {
+        return mClickable;
+    }
+
+    InMemoryUiNode setClickable(boolean clickable) {
+        mClickable = clickable;
+        return this;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    InMemoryUiNode setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        return this;
+    }
+
+    @Override
+    public boolean isFocusable() {
+        return mFocusable;
+    }
+
+    InMemoryUiNode setFocusable(boolean focusable) {
+        mFocusable = focusable;
+        return this;
+    }
+
+    @Override
+    public boolean isFocused() {
+        return mFocused;
+    }
+
+    InMemoryUiNode setFocused(boolean focused) {
+        mFocused = focused;
+        return this;
+    }
+
+    @Override
+    public boolean isScrollable() {
+        return mScrollable;
+    }
+
+    InMemoryUiNode setScrollable(boolean scrollable) {
+        mScrollable = scrollable;
+        return this;
+    }
+
+    @Override
+    public boolean isLongClickable() {
+        return mLongClickable;
+    }
+
+    InMemoryUiNode setLongClickable(boolean longClickable) {
+        mLongClickable = longClickable;
+        return this;
+    }
+
+    @Override
+    public boolean isPassword() {
+        return mPassword;
+    }
+
+    InMemoryUiNode setPassword(boolean password) {
+        mPassword = password;
+        return this;
+    }
+
+    @Override
+    public boolean isSelected() {
+        return mSelected;
+    }
+
+    InMemoryUiNode setSelected(boolean selected) {
+        mSelected = selected;
+        return this;
+    }
+
+    @Override
+    public boolean isVisibleToUser() {
+        return mVisibleToUser;
+    }
+
+    InMemoryUiNode setVisibleToUser(boolean visibleToUser) {
+        mVisibleToUser = visibleToUser;
+        return this;
+    }
+
+    @Override
+    public void getBoundsInScreen(int[] outBounds) {
+        System.arraycopy(mBounds, 0, outBounds, 0, 4);
+    }
+
+    InMemoryUiNode setBoundsInScreen(int left, int top, int right, int bottom) {
+        mBounds[0] = left;
+        mBounds[1] = top;
+        mBounds[2] = right;
+        mBounds[3] = bottom;
+        return this;
+    }
+}
@@ -20,6 +20,7 @@ import android.accessibilityservice.AccessibilityService;
 import android.app.UiAutomation;
 import android.app.UiAutomation.AccessibilityEventFilter;
 import android.graphics.Point;
+import android.os.Build;
 import android.os.RemoteException;
 import android.os.SystemClock;
 import android.util.Log;
@@ -31,6 +32,7 @@ import android.view.MotionEvent;
 import android.view.MotionEvent.PointerCoords;
 import android.view.MotionEvent.PointerProperties;
 import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
 
 import com.android.internal.util.Predicate;
 
@@ -64,6 +66,10 @@ class InteractionController {
     // Inserted after each motion event injection.
     private static final int MOTION_EVENT_INJECTION_DELAY_MILLIS = 5;
 
+    // A scroll has settled once no scroll event arrived for this long. Views report scrolling at
+    // most every 100 ms while they move.
+    private static final long SCROLL_SETTLE_QUIET_MILLIS = 200;
+
     public InteractionController(UiAutomatorBridge bridge) {
         mUiAutomatorBridge = bridge;
     }
@@ -169,6 +175,29 @@ class InteractionController {
         }
     }
 
+    /**
+     * Runs {@code command}, waits for the first scroll event it causes and then for the scrolling
+     * to settle, i.e. until no further scroll event arrives for
+     * {@link #SCROLL_SETTLE_QUIET_MILLIS}. This lets smooth scrolls and flings come to rest, and
+     * returns as soon as they do. Waiting for the scroll to settle gives up after the wait for
+     * idle timeout. The scroll events are followed by the {@link QueryController}, which receives
+     * all of them, rather than by waiting for one event at a time.
+     * <br />
+     * <strong>Note:</strong> The caller must release the returned {@link AccessibilityEvent} by
+     * calling {@link AccessibilityEvent#recycle()}.
+     * @return the last {@link AccessibilityEvent#TYPE_VIEW_SCROLLED} event, or null if the command
+     * caused none within the scroll acknowledgment timeout.
+     */
+    private AccessibilityEvent runAndWaitForScrollToSettle(Runnable command) {
+        QueryController queryController = mUiAutomatorBridge.getQueryController();
+        long count = queryController.getScrollEventCount();
+        mUiAutomatorBridge.updateIdleGeneration();
+        command.run();
+        return queryController.waitForScrollToSettle(count,
+                Configurator.getInstance().getScrollAcknowledgmentTimeout(),
+                SCROLL_SETTLE_QUIET_MILLIS, Configurator.getInstance().getWaitForIdleTimeout());
+    }
+
     /**
      * Send keys and blocks until the first specified accessibility event.
      *
@@ -376,7 +405,9 @@ class InteractionController {
 
     /**
      * Handle swipes in any direction where the result is a scroll event. This call blocks
-     * until the UI has fired a scroll event or timeout.
+     * until the first scroll event arrives or the scroll acknowledgment timeout expires,
+     * collecting the scroll events which arrive meanwhile. It does not wait for the scroll to
+     * settle; see {@link #scrollSwipeForEvent(int, int, int, int, int)} for that.
      * @param downX
      * @param downY
      * @param upX
@@ -412,6 +443,56 @@ class InteractionController {
             return false;
         }
 
+        boolean foundEnd = isScrollEnd(event, downX, downY, upX, upY);
+        recycleAccessibilityEvents(events);
+        return !foundEnd;
+    }
+
+    private AccessibilityEvent getLastMatchingEvent(List<AccessibilityEvent> events, int type) {
+        for (int x = events.size(); x > 0; x--) {
+            AccessibilityEvent event = events.get(x - 1);
+            if (event.getEventType() == type)
+                return event;
+        }
+        return null;
+    }
+
+    private void recycleAccessibilityEvents(List<AccessibilityEvent> events) {
+        for (AccessibilityEvent event : events)
+            event.recycle();
+        events.clear();
+    }
+
+    /**
+     * Handle swipes in any direction where the result is a scroll event. This call blocks
+     * until the scrolling caused by the swipe has settled, or until the scroll acknowledgment
+     * timeout if the swipe did not scroll.
+     * <br />
+     * <strong>Note:</strong> The caller must release the returned {@link AccessibilityEvent} by
+     * calling {@link AccessibilityEvent#recycle()}.
+     * @return the last {@link AccessibilityEvent#TYPE_VIEW_SCROLLED} event caused by the swipe,
+     * or null if the view did not scroll.
+     */
+    AccessibilityEvent scrollSwipeForEvent(final int downX, final int downY, final int upX,
+            final int upY, final int steps) {
+        Log.d(LOG_TAG, "scrollSwipe (" +  downX + ", " + downY + ", " + upX + ", "
+                + upY + ", " + steps +")");
+
+        Runnable command = new Runnable() {
+            @Override
+            public void run() {
+                swipe(downX, downY, upX, upY, steps);
+            }
+        };
+        return runAndWaitForScrollToSettle(command);
+    }
+
+    /**
+     * Returns true if the scroll {@code event} caused by a swipe shows that the view reached its
+     * beginning or end.
+     */
+    static boolean isScrollEnd(AccessibilityEvent event, int downX, int downY, int upX,
+            int upY) {
         // AdapterViews have indices we can use to check for the beginning.
         boolean foundEnd = false;
         if (event.getFromIndex() != -1 && event.getToIndex() != -1 && event.getItemCount() != -1) {
@@ -432,23 +513,162 @@ class InteractionController {
                 Log.d(LOG_TAG, "Horizontal scrollSwipe reached scroll end: " + foundEnd);
             }
         }
-        recycleAccessibilityEvents(events);
-        return !foundEnd;
+        return foundEnd;
     }
 
-    private AccessibilityEvent getLastMatchingEvent(List<AccessibilityEvent> events, int type) {
-        for (int x = events.size(); x > 0; x--) {
-            AccessibilityEvent event = events.get(x - 1);
-            if (event.getEventType() == type)
-                return event;
-        }
-        return null;
+    /**
+     * Performs the accessibility scroll {@code action} on {@code node} once, and blocks until the
+     * scrolling it caused has settled, in the same way as
+     * {@link #scrollSwipeForEvent(int, int, int, int, int)}. Actions must not be performed back to
+     * back, since each one cuts short the smooth scroll started by the previous one.
+     * <br />
+     * <strong>Note:</strong> The caller must release the returned {@link AccessibilityEvent} by
+     * calling {@link AccessibilityEvent#recycle()}.
+     * @param node
+     * @param action {@link AccessibilityNodeInfo#ACTION_SCROLL_FORWARD} or
+     * {@link AccessibilityNodeInfo#ACTION_SCROLL_BACKWARD}
+     * @return the last {@link AccessibilityEvent#TYPE_VIEW_SCROLLED} event, or null if the node
+     * did not scroll.
+     */
+    AccessibilityEvent performScrollActionForEvent(final AccessibilityNodeInfo node,
+            final int action) {
+        Log.d(LOG_TAG, "performScrollAction (" + action + ")");
+
+        Runnable command = new Runnable() {
+            @Override
+            public void run() {
+                node.performAction(action);
+            }
+        };
+        return runAndWaitForScrollToSettle(command);
     }
 
-    private void recycleAccessibilityEvents(List<AccessibilityEvent> events) {
-        for (AccessibilityEvent event : events)
+    /**
+     * Scrolls an adapter-backed {@code container} until the item at {@code index} is visible.
+     * <p/>
+     * Scrolling is done with accessibility scroll actions rather than swipes, one at a time, each
+     * left to settle before the item range reported by its last scroll event is read. Nothing is
+     * scrolled if the item is already visible or if the container cannot scroll towards it. The
+     * number of items one action moved gives an estimate of the actions still needed, and the
+     * search gives up early once that estimate exceeds what is left of {@code maxActions}.
+     * @param container
+     * @param index
+     * @param maxActions the maximum number of scroll actions to perform
+     * @return true if the item is visible, false if it could not be reached or if the container
+     * does not report item indices in its scroll events.
+     * @throws IllegalArgumentException if {@code index} is negative.
+     */
+    boolean scrollToItem(AccessibilityNodeInfo container, int index, int maxActions) {
+        if (index < 0) {
+            throw new IllegalArgumentException("index cannot be negative");
+        }
+        int actions = container.getActions();
+        int action;
+        int[] visible = getVisibleItemRange(container);
+        if (visible != null) {
+            if (index >= visible[0] && index <= visible[1]) {
+                return true;
+            }
+            action = index > visible[1] ? AccessibilityNodeInfo.ACTION_SCROLL_FORWARD :
+                    AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD;
+            if ((actions & action) == 0) {
+                // Already at the end the item is beyond
+                return false;
+            }
+        } else if ((actions & AccessibilityNodeInfo.ACTION_SCROLL_FORWARD) != 0) {
+            // The first action only tells where we are, so prefer the direction with more items
+            action = AccessibilityNodeInfo.ACTION_SCROLL_FORWARD;
+        } else if ((actions & AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD) != 0) {
+            action = AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD;
+        } else {
+            return false;
+        }
+
+        int lastFromIndex = visible != null ? visible[0] : -1;
+        for (int performed = 1; performed <= maxActions; performed++) {
+            AccessibilityEvent event = performScrollActionForEvent(container, action);
+            if (event == null) {
+                // Nothing more to see in this direction
+                return false;
+            }
+            int fromIndex = event.getFromIndex();
+            int toIndex = event.getToIndex();
+            int itemCount = event.getItemCount();
             event.recycle();
-        events.clear();
+
+            if (fromIndex == -1 || toIndex == -1) {
+                Log.w(LOG_TAG, "scrollToItem: container does not report item indices");
+                return false;
+            }
+            if (index >= fromIndex && index <= toIndex) {
+                return true;
+            }
+            if (itemCount != -1 && index >= itemCount) {
+                return false;
+            }
+
+            int distance;
+            if (index > toIndex) {
+                action = AccessibilityNodeInfo.ACTION_SCROLL_FORWARD;
+                distance = index - toIndex;
+            } else {
+                action = AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD;
+                distance = fromIndex - index;
+            }
+            if (lastFromIndex != -1) {
+                int itemsPerAction = Math.abs(fromIndex - lastFromIndex);
+                if (itemsPerAction == 0) {
+                    // Reached the end without the event saying so
+                    return false;
+                }
+                int needed = (distance + itemsPerAction - 1) / itemsPerAction;
+                Log.d(LOG_TAG, String.format(
+                        "scrollToItem: visible [%d, %d], target %d, about %d more actions",
+                        fromIndex, toIndex, index, needed));
+                if (needed > maxActions - performed) {
+                    return false;
+                }
+            }
+            lastFromIndex = fromIndex;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the first and last item indices that {@code container} shows, as reported by the
+     * collection item info of its visible children, or null if they are unknown. Only single
+     * column and single row collections are handled, where an item's row or column index is its
+     * index in the adapter, as reported by scroll events.
+     */
+    private static int[] getVisibleItemRange(AccessibilityNodeInfo container) {
+        if (UiDevice.API_LEVEL_ACTUAL < Build.VERSION_CODES.KITKAT) {
+            return null;
+        }
+        AccessibilityNodeInfo.CollectionInfo collection = container.getCollectionInfo();
+        if (collection == null) {
+            return null;
+        }
+        boolean vertical = collection.getColumnCount() <= 1;
+        if (!vertical && collection.getRowCount() > 1) {
+            return null;
+        }
+        int first = -1;
+        int last = -1;
+        for (int x = 0; x < container.getChildCount(); x++) {
+            AccessibilityNodeInfo child = container.getChild(x);
+            if (child == null) {
+                continue;
+            }
+            AccessibilityNodeInfo.CollectionItemInfo item =
+                    child.isVisibleToUser() ? child.getCollectionItemInfo() : null;
+            if (item != null) {
+                int itemIndex = vertical ? item.getRowIndex() : item.getColumnIndex();
+                first = first == -1 ? itemIndex : Math.min(first, itemIndex);
+                last = Math.max(last, itemIndex);
+            }
+            child.recycle();
+        }
+        return first != -1 ? new int[] { first, last } : null;
     }
 
     /**
@@ -25,6 +25,9 @@ import android.view.accessibility.AccessibilityNodeInfo;
 /**
  * The QueryController main purpose is to translate a {@link UiSelector} selectors to
  * {@link AccessibilityNodeInfo}. This is all this controller does.
+ * <p/>
+ * Searches keep their state in a per-search object rather than in this controller, so several
+ * threads may search at the same time.
  */
 class QueryController {
 
@@ -39,26 +42,50 @@ class QueryController {
 
     private String mLastActivityName = null;
 
-    // During a pattern selector search, the recursive pattern search
-    // methods will track their counts and indexes here.
-    private int mPatternCounter = 0;
-    private int mPatternIndexer = 0;
-
-    // These help show each selector's search context as it relates to the previous sub selector
-    // matched. When a compound selector fails, it is hard to tell which part of it is failing.
-    // Seeing how a selector is being parsed and which sub selector failed within a long list
-    // of compound selectors is very helpful.
-    private int mLogIndent = 0;
-    private int mLogParentIndent = 0;
-
     private String mLastTraversedText = "";
 
+    // Bumped whenever an event indicates the hierarchy may have changed. Used to decide whether a
+    // previously captured HierarchySnapshot can still be used.
+    private long mHierarchyGeneration = 0;
+
+    // The number of scroll events received, a copy of the latest one and when it arrived. Scrolls
+    // are followed until they settle from these, so no event is missed between two waits.
+    private long mScrollEventCount = 0;
+    private AccessibilityEvent mLastScrollEvent = null;
+    private long mLastScrollEventTime;
+
+    // The number of nodes leaked by the most recent search on each thread, as found by its node
+    // accounting. Searches may run on several threads at once, so each keeps its own count.
+    private final ThreadLocal<Integer> mLastSearchLeakedNodes = new ThreadLocal<Integer>();
+
+    private static final int HIERARCHY_CHANGE_EVENT_MASK =
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED |
+            AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED |
+            AccessibilityEvent.TYPE_WINDOWS_CHANGED |
+            AccessibilityEvent.TYPE_VIEW_SCROLLED |
+            AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED |
+            AccessibilityEvent.TYPE_VIEW_SELECTED |
+            AccessibilityEvent.TYPE_VIEW_FOCUSED |
+            AccessibilityEvent.TYPE_VIEW_CLICKED |
+            AccessibilityEvent.TYPE_VIEW_LONG_CLICKED;
+
     public QueryController(UiAutomatorBridge bridge) {
         mUiAutomatorBridge = bridge;
         bridge.setOnAccessibilityEventListener(new OnAccessibilityEventListener() {
             @Override
             public void onAccessibilityEvent(AccessibilityEvent event) {
                 synchronized (mLock) {
+                    if ((event.getEventType() & HIERARCHY_CHANGE_EVENT_MASK) != 0) {
+                        mHierarchyGeneration++;
+                    }
+                    if (event.getEventType() == AccessibilityEvent.TYPE_VIEW_SCROLLED) {
+                        if (mLastScrollEvent != null) {
+                            mLastScrollEvent.recycle();
+                        }
+                        mLastScrollEvent = AccessibilityEvent.obtain(event);
+                        mLastScrollEventTime = SystemClock.uptimeMillis();
+                        mScrollEventCount++;
+                    }
                     switch(event.getEventType()) {
                         case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
                             // don't trust event.getText(), check for nulls
@@ -79,6 +106,7 @@ class QueryController {
                     }
                     mLock.notifyAll();
                 }
+                mUiAutomatorBridge.onAccessibilityEvent(event);
             }
         });
     }
@@ -109,11 +137,112 @@ class QueryController {
         }
     }
 
-    private void initializeNewSearch() {
-        mPatternCounter = 0;
-        mPatternIndexer = 0;
-        mLogIndent = 0;
-        mLogParentIndent = 0;
+    /**
+     * Returns a counter which changes every time an accessibility event indicates that the
+     * hierarchy may have changed.
+     */
+    long getHierarchyGeneration() {
+        synchronized (mLock) {
+            return mHierarchyGeneration;
+        }
+    }
+
+    /**
+     * Blocks until {@link #getHierarchyGeneration()} no longer returns {@code generation}, or until
+     * the {@code timeout} expires.
+     *
+     * @param generation The generation that was current when the caller last looked at the UI.
+     * @param timeout Maximum amount of time to wait in milliseconds.
+     * @return true if the hierarchy changed, false if the timeout expired first or the thread was
+     * interrupted. The interrupted status is kept, so callers should stop waiting if it is set.
+     */
+    boolean waitForHierarchyChange(long generation, long timeout) {
+        long deadline = SystemClock.uptimeMillis() + timeout;
+        synchronized (mLock) {
+            while (mHierarchyGeneration == generation) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    mLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Returns the number of {@link AccessibilityEvent#TYPE_VIEW_SCROLLED} events received. */
+    long getScrollEventCount() {
+        synchronized (mLock) {
+            return mScrollEventCount;
+        }
+    }
+
+    /**
+     * Blocks until a {@link AccessibilityEvent#TYPE_VIEW_SCROLLED} event arrives after the first
+     * {@code count} ones, and then until the scrolling settles, i.e. no further scroll event
+     * arrives for {@code quietTime}. Every event received in between is seen, however quickly
+     * they follow each other.
+     * <br />
+     * <strong>Note:</strong> The caller must release the returned {@link AccessibilityEvent} by
+     * calling {@link AccessibilityEvent#recycle()}.
+     *
+     * @param count The value {@link #getScrollEventCount()} returned before the scroll started.
+     * @param timeout Maximum time to wait for the first scroll event in milliseconds.
+     * @param quietTime Time without scroll events after which the scroll has settled.
+     * @param settleTimeout Maximum time to wait for the scroll to settle in milliseconds.
+     * @return a copy of the last scroll event, or null if none arrived within the {@code timeout}
+     * or the thread was interrupted first. The interrupted status is kept.
+     */
+    AccessibilityEvent waitForScrollToSettle(long count, long timeout, long quietTime,
+            long settleTimeout) {
+        long deadline = SystemClock.uptimeMillis() + timeout;
+        synchronized (mLock) {
+            try {
+                while (mScrollEventCount == count) {
+                    long remaining = deadline - SystemClock.uptimeMillis();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    mLock.wait(remaining);
+                }
+                long settleDeadline = SystemClock.uptimeMillis() + settleTimeout;
+                while (true) {
+                    long now = SystemClock.uptimeMillis();
+                    long settled = Math.min(mLastScrollEventTime + quietTime, settleDeadline);
+                    if (settled <= now) {
+                        break;
+                    }
+                    mLock.wait(settled - now);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (mScrollEventCount == count) {
+                    return null;
+                }
+            }
+            return AccessibilityEvent.obtain(mLastScrollEvent);
+        }
+    }
+
+    /** Forces the next {@link #getHierarchyGeneration()} to report a change. */
+    void invalidateHierarchy() {
+        synchronized (mLock) {
+            mHierarchyGeneration++;
+        }
+    }
+
+    /**
+     * Returns the number of nodes that the most recent search on the calling thread obtained but
+     * neither recycled nor returned. Every search should leave this at zero.
+     */
+    int getLastSearchLeakedNodes() {
+        Integer leaked = mLastSearchLeakedNodes.get();
+        return leaked != null ? leaked : 0;
     }
 
     /**
@@ -125,8 +254,9 @@ class QueryController {
      * @return number of pattern matches. Returns 0 for all other cases.
      */
     public int getPatternCount(UiSelector selector) {
-        findAccessibilityNodeInfo(selector, true /*counting*/);
-        return mPatternCounter;
+        Search search = new Search();
+        findAccessibilityNodeInfo(selector, true /*counting*/, search);
+        return search.mPatternCounter;
     }
 
     /**
@@ -140,8 +270,12 @@ class QueryController {
 
     protected AccessibilityNodeInfo findAccessibilityNodeInfo(UiSelector selector,
             boolean isCounting) {
+        return findAccessibilityNodeInfo(selector, isCounting, new Search());
+    }
+
+    private AccessibilityNodeInfo findAccessibilityNodeInfo(UiSelector selector,
+            boolean isCounting, Search search) {
         mUiAutomatorBridge.waitForIdle();
-        initializeNewSearch();
 
         if (DEBUG)
             Log.d(LOG_TAG, "Searching: " + selector);
@@ -151,10 +285,53 @@ class QueryController {
             Log.e(LOG_TAG, "Cannot proceed when root node is null. Aborted search");
             return null;
         }
+        search.mObtainedNodes++;
+
+        // Copy so that we don't modify the original's sub selectors
+        UiSelector uiSelector = new UiSelector(selector);
+        AccessibilityNodeInfo result =
+                translateCompoundSelector(uiSelector, rootNode, isCounting, search);
+        mLastSearchLeakedNodes.set(search.checkNodeAccounting(result));
+        return result;
+    }
+
+    /**
+     * Searches only the subtree under {@code container} for the first node to match
+     * {@code selector}, as if {@code selector} were a child selector of the container. Unlike
+     * {@link #findAccessibilityNodeInfo(UiSelector)}, this neither waits for idle nor fetches the
+     * active window root, so the caller must know that the container's content is settled.
+     * @param selector
+     * @param container
+     * @return AccessibilityNodeInfo if found else null
+     */
+    AccessibilityNodeInfo findAccessibilityNodeInfo(UiSelector selector,
+            AccessibilityNodeInfo container) {
+        Search search = new Search();
+
+        if (DEBUG)
+            Log.d(LOG_TAG, "Searching container subtree: " + selector);
 
         // Copy so that we don't modify the original's sub selectors
         UiSelector uiSelector = new UiSelector(selector);
-        return translateCompoundSelector(uiSelector, rootNode, isCounting);
+        AccessibilityNodeInfo retNode = null;
+        int childCount = container.getChildCount();
+        for (int i = 0; i < childCount && retNode == null; i++) {
+            AccessibilityNodeInfo childNode = search.getChild(container, i);
+            if (childNode == null) {
+                continue;
+            }
+            if (!childNode.isVisibleToUser()) {
+                search.recycle(childNode);
+                continue;
+            }
+            if (uiSelector.hasContainerSelector() || uiSelector.hasPatternSelector()) {
+                retNode = translateCompoundSelector(uiSelector, childNode, false, search);
+            } else {
+                retNode = findNodeRegularRecursive(uiSelector, childNode, i, search);
+            }
+        }
+        mLastSearchLeakedNodes.set(search.checkNodeAccounting(retNode));
+        return retNode;
     }
 
     /**
@@ -206,13 +383,16 @@ class QueryController {
      * directly treated as regular_selector. So the presence of a CONTAINER and PATTERN within
      * a selector simply dictates that the selector matching will be constraint to the sub tree
      * node where the CONTAINER and its child PATTERN have identified.
+     * <p/>
+     * Like all of the recursive search methods, this takes ownership of {@code fromNode}: it is
+     * either returned or recycled, along with every other node obtained during the search.
      * @param selector
      * @param fromNode
      * @param isCounting
      * @return AccessibilityNodeInfo
      */
     private AccessibilityNodeInfo translateCompoundSelector(UiSelector selector,
-            AccessibilityNodeInfo fromNode, boolean isCounting) {
+            AccessibilityNodeInfo fromNode, boolean isCounting, Search search) {
 
         // Start translating compound selectors by translating the regular_selector first
         // The regular_selector is then used as a container for any optional pattern_selectors
@@ -221,12 +401,13 @@ class QueryController {
             // nested pattern selectors
             if(selector.getContainerSelector().hasContainerSelector()) {
                 fromNode = translateCompoundSelector(
-                        selector.getContainerSelector(), fromNode, false);
-                initializeNewSearch();
+                        selector.getContainerSelector(), fromNode, false, search);
+                search.initializeNewSearch();
             } else
-                fromNode = translateReqularSelector(selector.getContainerSelector(), fromNode);
+                fromNode = translateReqularSelector(selector.getContainerSelector(), fromNode,
+                        search);
         else
-            fromNode = translateReqularSelector(selector, fromNode);
+            fromNode = translateReqularSelector(selector, fromNode, search);
 
         if(fromNode == null) {
             if (DEBUG)
@@ -236,11 +417,14 @@ class QueryController {
 
         if(selector.hasPatternSelector()) {
             fromNode = translatePatternSelector(selector.getPatternSelector(),
-                    fromNode, isCounting);
+                    fromNode, isCounting, search);
 
             if (isCounting) {
                 Log.i(LOG_TAG, String.format(
-                        "Counted %d instances of: %s", mPatternCounter, selector));
+                        "Counted %d instances of: %s", search.mPatternCounter, selector));
+                if (fromNode != null) {
+                    search.recycle(fromNode);
+                }
                 return null;
             } else {
                 if(fromNode == null) {
@@ -256,7 +440,7 @@ class QueryController {
         // with getChild(By selector) after a container and pattern selectors
         if(selector.hasContainerSelector() || selector.hasPatternSelector()) {
             if(selector.hasChildSelector() || selector.hasParentSelector())
-                fromNode = translateReqularSelector(selector, fromNode);
+                fromNode = translateReqularSelector(selector, fromNode, search);
         }
 
         if(fromNode == null) {
@@ -282,39 +466,43 @@ class QueryController {
      * @return AccessibilityNodeInfo if found else null
      */
     private AccessibilityNodeInfo translateReqularSelector(UiSelector selector,
-            AccessibilityNodeInfo fromNode) {
+            AccessibilityNodeInfo fromNode, Search search) {
 
-        return findNodeRegularRecursive(selector, fromNode, 0);
+        return findNodeRegularRecursive(selector, fromNode, 0, search);
     }
 
     private AccessibilityNodeInfo findNodeRegularRecursive(UiSelector subSelector,
-            AccessibilityNodeInfo fromNode, int index) {
+            AccessibilityNodeInfo fromNode, int index, Search search) {
 
         if (subSelector.isMatchFor(fromNode, index)) {
             if (DEBUG) {
-                Log.d(LOG_TAG, formatLog(String.format("%s",
+                Log.d(LOG_TAG, search.formatLog(String.format("%s",
                         subSelector.dumpToString(false))));
             }
             if(subSelector.isLeaf()) {
                 return fromNode;
             }
             if(subSelector.hasChildSelector()) {
-                mLogIndent++; // next selector
+                search.mLogIndent++; // next selector
                 subSelector = subSelector.getChildSelector();
                 if(subSelector == null) {
                     Log.e(LOG_TAG, "Error: A child selector without content");
+                    search.recycle(fromNode);
                     return null; // there is an implementation fault
                 }
             } else if(subSelector.hasParentSelector()) {
-                mLogIndent++; // next selector
+                search.mLogIndent++; // next selector
                 subSelector = subSelector.getParentSelector();
                 if(subSelector == null) {
                     Log.e(LOG_TAG, "Error: A parent selector without content");
+                    search.recycle(fromNode);
                     return null; // there is an implementation fault
                 }
                 // the selector requested we start at this level from
                 // the parent node from the one we just matched
-                fromNode = fromNode.getParent();
+                AccessibilityNodeInfo parentNode = search.getParent(fromNode);
+                search.recycle(fromNode);
+                fromNode = parentNode;
                 if(fromNode == null)
                     return null;
             }
@@ -323,7 +511,7 @@ class QueryController {
         int childCount = fromNode.getChildCount();
         boolean hasNullChild = false;
         for (int i = 0; i < childCount; i++) {
-            AccessibilityNodeInfo childNode = fromNode.getChild(i);
+            AccessibilityNodeInfo childNode = search.getChild(fromNode, i);
             if (childNode == null) {
                 Log.w(LOG_TAG, String.format(
                         "AccessibilityNodeInfo returned a null child (%d of %d)", i, childCount));
@@ -337,13 +525,17 @@ class QueryController {
                 if (VERBOSE)
                     Log.v(LOG_TAG,
                             String.format("Skipping invisible child: %s", childNode.toString()));
+                search.recycle(childNode);
                 continue;
             }
-            AccessibilityNodeInfo retNode = findNodeRegularRecursive(subSelector, childNode, i);
+            AccessibilityNodeInfo retNode =
+                    findNodeRegularRecursive(subSelector, childNode, i, search);
             if (retNode != null) {
+                search.recycle(fromNode);
                 return retNode;
             }
         }
+        search.recycle(fromNode);
         return null;
     }
 
@@ -369,7 +561,7 @@ class QueryController {
      * See {@link #translateCompoundSelector(UiSelector, AccessibilityNodeInfo, boolean)}
      */
     private AccessibilityNodeInfo translatePatternSelector(UiSelector subSelector,
-            AccessibilityNodeInfo fromNode, boolean isCounting) {
+            AccessibilityNodeInfo fromNode, boolean isCounting, Search search) {
 
         if(subSelector.hasPatternSelector()) {
             // Since pattern_selectors are also the type of selectors used when counting,
@@ -377,44 +569,46 @@ class QueryController {
             if(isCounting)
                 //since we're counting, we reset the indexer so to terminates the search when
                 // the end of tree is reached. The count will be in mPatternCount
-                mPatternIndexer = -1;
+                search.mPatternIndexer = -1;
             else
                 // terminates the search once we match the pattern's instance
-                mPatternIndexer = subSelector.getInstance();
+                search.mPatternIndexer = subSelector.getInstance();
 
             // A pattern is wrapped in a PATTERN[instance=x PATTERN[the_pattern]]
             subSelector = subSelector.getPatternSelector();
             if(subSelector == null) {
                 Log.e(LOG_TAG, "Pattern portion of the selector is null or not defined");
+                search.recycle(fromNode);
                 return null; // there is an implementation fault
             }
             // save the current indent level as parent indent before pattern searches
             // begin under the current tree position.
-            mLogParentIndent = ++mLogIndent;
-            return findNodePatternRecursive(subSelector, fromNode, 0, subSelector);
+            search.mLogParentIndent = ++search.mLogIndent;
+            return findNodePatternRecursive(subSelector, fromNode, 0, subSelector, search);
         }
 
         Log.e(LOG_TAG, "Selector must have a pattern selector defined"); // implementation fault?
+        search.recycle(fromNode);
         return null;
     }
 
     private AccessibilityNodeInfo findNodePatternRecursive(
             UiSelector subSelector, AccessibilityNodeInfo fromNode, int index,
-            UiSelector originalPattern) {
+            UiSelector originalPattern, Search search) {
 
         if (subSelector.isMatchFor(fromNode, index)) {
             if(subSelector.isLeaf()) {
-                if(mPatternIndexer == 0) {
+                if(search.mPatternIndexer == 0) {
                     if (DEBUG)
-                        Log.d(LOG_TAG, formatLog(
+                        Log.d(LOG_TAG, search.formatLog(
                                 String.format("%s", subSelector.dumpToString(false))));
                     return fromNode;
                 } else {
                     if (DEBUG)
-                        Log.d(LOG_TAG, formatLog(
+                        Log.d(LOG_TAG, search.formatLog(
                                 String.format("%s", subSelector.dumpToString(false))));
-                    mPatternCounter++; //count the pattern matched
-                    mPatternIndexer--; //decrement until zero for the instance requested
+                    search.mPatternCounter++; //count the pattern matched
+                    search.mPatternIndexer--; //decrement until zero for the instance requested
 
                     // At a leaf selector within a group and still not instance matched
                     // then reset the  selector to continue search from current position
@@ -422,28 +616,32 @@ class QueryController {
                     // pattern index hits 0.
                     subSelector = originalPattern;
                     // starting over with next pattern search so reset to parent level
-                    mLogIndent = mLogParentIndent;
+                    search.mLogIndent = search.mLogParentIndent;
                 }
             } else {
                 if (DEBUG)
-                    Log.d(LOG_TAG, formatLog(
+                    Log.d(LOG_TAG, search.formatLog(
                             String.format("%s", subSelector.dumpToString(false))));
 
                 if(subSelector.hasChildSelector()) {
-                    mLogIndent++; // next selector
+                    search.mLogIndent++; // next selector
                     subSelector = subSelector.getChildSelector();
                     if(subSelector == null) {
                         Log.e(LOG_TAG, "Error: A child selector without content");
+                        search.recycle(fromNode);
                         return null;
                     }
                 } else if(subSelector.hasParentSelector()) {
-                    mLogIndent++; // next selector
+                    search.mLogIndent++; // next selector
                     subSelector = subSelector.getParentSelector();
                     if(subSelector == null) {
                         Log.e(LOG_TAG, "Error: A parent selector without content");
+                        search.recycle(fromNode);
                         return null;
                     }
-                    fromNode = fromNode.getParent();
+                    AccessibilityNodeInfo parentNode = search.getParent(fromNode);
+                    search.recycle(fromNode);
+                    fromNode = parentNode;
                     if(fromNode == null)
                         return null;
                 }
@@ -453,7 +651,7 @@ class QueryController {
         int childCount = fromNode.getChildCount();
         boolean hasNullChild = false;
         for (int i = 0; i < childCount; i++) {
-            AccessibilityNodeInfo childNode = fromNode.getChild(i);
+            AccessibilityNodeInfo childNode = search.getChild(fromNode, i);
             if (childNode == null) {
                 Log.w(LOG_TAG, String.format(
                         "AccessibilityNodeInfo returned a null child (%d of %d)", i, childCount));
@@ -467,14 +665,17 @@ class QueryController {
                 if (DEBUG)
                     Log.d(LOG_TAG,
                         String.format("Skipping invisible child: %s", childNode.toString()));
+                search.recycle(childNode);
                 continue;
             }
             AccessibilityNodeInfo retNode = findNodePatternRecursive(
-                    subSelector, childNode, i, originalPattern);
+                    subSelector, childNode, i, originalPattern, search);
             if (retNode != null) {
+                search.recycle(fromNode);
                 return retNode;
             }
         }
+        search.recycle(fromNode);
         return null;
     }
 
@@ -500,17 +701,90 @@ class QueryController {
         AccessibilityNodeInfo rootNode = getRootNode();
         if (rootNode == null)
             return null;
-        return rootNode.getPackageName() != null ? rootNode.getPackageName().toString() : null;
+        CharSequence packageName = rootNode.getPackageName();
+        rootNode.recycle();
+        return packageName != null ? packageName.toString() : null;
     }
 
-    private String formatLog(String str) {
-        StringBuilder l = new StringBuilder();
-        for(int space = 0; space < mLogIndent; space++)
-            l.append(". . ");
-        if(mLogIndent > 0)
-            l.append(String.format(". . [%d]: %s", mPatternCounter, str));
-        else
-            l.append(String.format(". . [%d]: %s", mPatternCounter, str));
-        return l.toString();
+    /**
+     * The mutable state of a single search. Each search creates its own, so that searches on
+     * different threads, or nested within one another, do not interfere.
+     */
+    private static final class Search {
+        // During a pattern selector search, the recursive pattern search
+        // methods will track their counts and indexes here.
+        int mPatternCounter = 0;
+        int mPatternIndexer = 0;
+
+        // These help show each selector's search context as it relates to the previous sub
+        // selector matched. When a compound selector fails, it is hard to tell which part of it is
+        // failing. Seeing how a selector is being parsed and which sub selector failed within a
+        // long list of compound selectors is very helpful.
+        int mLogIndent = 0;
+        int mLogParentIndent = 0;
+
+        // Debug accounting of the nodes obtained and recycled by this search. Every node a
+        // search obtains is recycled unless it is returned to the caller.
+        int mObtainedNodes = 0;
+        int mRecycledNodes = 0;
+
+        /** Resets the pattern and log state before searching within a nested container. */
+        void initializeNewSearch() {
+            mPatternCounter = 0;
+            mPatternIndexer = 0;
+            mLogIndent = 0;
+            mLogParentIndent = 0;
+        }
+
+        AccessibilityNodeInfo getChild(AccessibilityNodeInfo node, int index) {
+            AccessibilityNodeInfo child = node.getChild(index);
+            if (child != null) {
+                mObtainedNodes++;
+            }
+            return child;
+        }
+
+        AccessibilityNodeInfo getParent(AccessibilityNodeInfo node) {
+            AccessibilityNodeInfo parent = node.getParent();
+            if (parent != null) {
+                mObtainedNodes++;
+            }
+            return parent;
+        }
+
+        void recycle(AccessibilityNodeInfo node) {
+            node.recycle();
+            mRecycledNodes++;
+        }
+
+        /**
+         * Returns the number of nodes obtained by this search which were neither recycled nor
+         * returned as its {@code result}, and reports them in debug mode.
+         */
+        int checkNodeAccounting(AccessibilityNodeInfo result) {
+            int outstanding = mObtainedNodes - mRecycledNodes - (result != null ? 1 : 0);
+            if (DEBUG) {
+                if (outstanding != 0) {
+                    Log.w(LOG_TAG, String.format(
+                            "Search leaked %d nodes (%d obtained, %d recycled)",
+                            outstanding, mObtainedNodes, mRecycledNodes));
+                } else {
+                    Log.d(LOG_TAG, String.format("Search obtained %d nodes, recycled %d",
+                            mObtainedNodes, mRecycledNodes));
+                }
+            }
+            return outstanding;
+        }
+
+        String formatLog(String str) {
+            StringBuilder l = new StringBuilder();
+            for(int space = 0; space < mLogIndent; space++)
+                l.append(". . ");
+            if(mLogIndent > 0)
+                l.append(String.format(". . [%d]: %s", mPatternCounter, str));
+            else
+                l.append(String.format(". . [%d]: %s", mPatternCounter, str));
+            return l.toString();
+        }
     }
 }
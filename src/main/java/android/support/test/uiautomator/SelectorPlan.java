@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, compiled form of a {@link BySelector} and its child selectors, created by
+ * {@link BySelector#compile()}.
+ * <p/>
+ * The selector tree is flattened into arrays indexed by selector number, with the top level
+ * selector at {@link #ROOT} and the child selectors of each selector listed by number. The
+ * criteria of each selector are ordered so that the cheapest tests run first: boolean attributes,
+ * then exact string matches (resource names before other attributes), then substring matches and
+ * finally regular expressions.
+ * <p/>
+ * {@link #forCriteria} creates a plan for a single selector from criteria given explicitly, which
+ * is how {@link UiSelectorPlan} evaluates each level of a {@link UiSelector}.
+ */
+final class SelectorPlan {
+
+    /** The number of the top level selector. */
+    static final int ROOT = 0;
+
+    // Boolean attributes, in the order of the criteria read by compile()
+    private static final int[] FLAGS = {
+            UiNodeAttributes.FLAG_CHECKED, UiNodeAttributes.FLAG_CHECKABLE,
+            UiNodeAttributes.FLAG_CLICKABLE, UiNodeAttributes.FLAG_ENABLED,
+            UiNodeAttributes.FLAG_FOCUSED, UiNodeAttributes.FLAG_FOCUSABLE,
+            UiNodeAttributes.FLAG_LONG_CLICKABLE, UiNodeAttributes.FLAG_SCROLLABLE,
+            UiNodeAttributes.FLAG_SELECTED
+    };
+
+    // String attributes, in the order in which equally expensive criteria are tested
+    static final int ATTR_RES = 0;
+    static final int ATTR_CLASS = 1;
+    static final int ATTR_PKG = 2;
+    static final int ATTR_TEXT = 3;
+    static final int ATTR_DESC = 4;
+
+    // The selectors this plan was compiled from, and their modification counts at the time
+    private final BySelector[] mSelectors;
+    private final int[] mModCounts;
+
+    private final int[][] mChildren;
+    private final int[] mMinDepths;
+    private final int[] mMaxDepths;
+    private final int[] mFlagMasks;
+    private final int[] mFlagValues;
+    private final int[][] mStringAttributes;
+    private final StringCriterion[][] mStringCriteria;
+
+    /**
+     * Compiles {@code selector} and all of its child selectors.
+     *
+     * @throws IllegalArgumentException if the selector is one of its own descendants.
+     */
+    SelectorPlan(BySelector selector) {
+        List<BySelector> selectors = new ArrayList<BySelector>();
+        List<int[]> children = new ArrayList<int[]>();
+        flatten(selector, selectors, children, new IdentityHashMap<BySelector, Boolean>());
+
+        int count = selectors.size();
+        mSelectors = selectors.toArray(new BySelector[count]);
+        mModCounts = new int[count];
+        mChildren = children.toArray(new int[count][]);
+        mMinDepths = new int[count];
+        mMaxDepths = new int[count];
+        mFlagMasks = new int[count];
+        mFlagValues = new int[count];
+        mStringAttributes = new int[count][];
+        mStringCriteria = new StringCriterion[count][];
+        for (int i = 0; i < count; i++) {
+            compile(i, mSelectors[i]);
+        }
+    }
+
+    private SelectorPlan(int flagMask, int flagValues, int[] stringAttributes,
+            StringCriterion[] stringCriteria) {
+        mSelectors = new BySelector[0];
+        mModCounts = new int[0];
+        mChildren = new int[][] { new int[0] };
+        mMinDepths = new int[] { 0 };
+        mMaxDepths = new int[] { Integer.MAX_VALUE };
+        mFlagMasks = new int[] { flagMask };
+        mFlagValues = new int[] { flagValues };
+        mStringAttributes = new int[1][];
+        mStringCriteria = new StringCriterion[1][];
+        setStringCriteria(ROOT, stringAttributes, stringCriteria, stringCriteria.length);
+    }
+
+    /**
+     * Returns a plan for a single {@link #ROOT} selector, without child selectors or depth
+     * limits, which tests the given criteria. Unlike a {@link BySelector}, it may test several
+     * criteria on the same attribute.
+     *
+     * @param flagMask The {@link UiNodeAttributes} flags to test.
+     * @param flagValues The required values of the flags in {@code flagMask}.
+     * @param stringAttributes The attribute each string criterion tests, one of the ATTR_*
+     * constants.
+     * @param stringCriteria The string criteria, in any order.
+     */
+    static SelectorPlan forCriteria(int flagMask, int flagValues, int[] stringAttributes,
+            StringCriterion[] stringCriteria) {
+        return new SelectorPlan(flagMask, flagValues, stringAttributes, stringCriteria);
+    }
+
+    /** Adds {@code selector} and its descendants to the lists in pre-order. */
+    private static int flatten(BySelector selector, List<BySelector> selectors,
+            List<int[]> children, Map<BySelector, Boolean> ancestors) {
+
+        if (ancestors.put(selector, Boolean.TRUE) != null) {
+            throw new IllegalArgumentException("selector cannot be its own descendant");
+        }
+        int number = selectors.size();
+        selectors.add(selector);
+        children.add(null);
+
+        int[] childNumbers = new int[selector.mChildSelectors.size()];
+        for (int i = 0; i < childNumbers.length; i++) {
+            childNumbers[i] = flatten(selector.mChildSelectors.get(i), selectors, children,
+                    ancestors);
+        }
+        children.set(number, childNumbers);
+        ancestors.remove(selector);
+        return number;
+    }
+
+    private void compile(int number, BySelector selector) {
+        mModCounts[number] = selector.mModCount;
+        mMinDepths[number] = selector.mMinDepth != null ? selector.mMinDepth : 0;
+        mMaxDepths[number] = selector.mMaxDepth != null ? selector.mMaxDepth : Integer.MAX_VALUE;
+
+        int mask = 0;
+        int values = 0;
+        Boolean[] flags = { selector.mChecked, selector.mCheckable, selector.mClickable,
+                selector.mEnabled, selector.mFocused, selector.mFocusable,
+                selector.mLongClickable, selector.mScrollable, selector.mSelected };
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i] != null) {
+                mask |= FLAGS[i];
+                if (flags[i]) {
+                    values |= FLAGS[i];
+                }
+            }
+        }
+        mFlagMasks[number] = mask;
+        mFlagValues[number] = values;
+
+        StringCriterion[] byAttribute = { selector.mRes, selector.mClazz, selector.mPkg,
+                selector.mText, selector.mDesc };
+        int[] attributes = new int[byAttribute.length];
+        StringCriterion[] criteria = new StringCriterion[byAttribute.length];
+        int size = 0;
+        for (int i = 0; i < byAttribute.length; i++) {
+            if (byAttribute[i] != null) {
+                attributes[size] = i;
+                criteria[size++] = byAttribute[i];
+            }
+        }
+        setStringCriteria(number, attributes, criteria, size);
+    }
+
+    /**
+     * Sets the first {@code size} string criteria of {@code selector}, sorted by cost: the
+     * criterion type, then the attribute order.
+     */
+    private void setStringCriteria(int selector, int[] attributes, StringCriterion[] criteria,
+            int size) {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) criteria[i].getType() << 32) | (attributes[i] << 16) | i;
+        }
+        Arrays.sort(keys);
+        mStringAttributes[selector] = new int[size];
+        mStringCriteria[selector] = new StringCriterion[size];
+        for (int i = 0; i < size; i++) {
+            int position = (int) (keys[i] & 0xffff);
+            mStringAttributes[selector][i] = attributes[position];
+            mStringCriteria[selector][i] = criteria[position];
+        }
+    }
+
+    /**
+     * Returns true if none of the selectors this plan was compiled from has been modified since.
+     */
+    boolean isCurrent() {
+        for (int i = 0; i < mSelectors.length; i++) {
+            if (mSelectors[i].mModCount != mModCounts[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the numbers of the child selectors of {@code selector}. */
+    int[] getChildren(int selector) {
+        return mChildren[selector];
+    }
+
+    /** Returns the maximum relative depth of a match for {@code selector}. */
+    int getMaxDepth(int selector) {
+        return mMaxDepths[selector];
+    }
+
+    /**
+     * Returns true if the node matches all of the non-child criteria of {@code selector}.
+     *
+     * @param node The attributes of the node to check.
+     * @param selector The number of the selector used to evaluate the node.
+     * @param relativeDepth The distance between {@code node} and the node matching the parent
+     * selector, or the root node for the top level selector.
+     */
+    boolean accept(UiNodeAttributes node, int selector, int relativeDepth) {
+        if (relativeDepth < mMinDepths[selector] || relativeDepth > mMaxDepths[selector]) {
+            return false;
+        }
+
+        int mask = mFlagMasks[selector];
+        if (mask != 0 && ((node.getFlags() & mask) ^ mFlagValues[selector]) != 0) {
+            return false;
+        }
+
+        int[] attributes = mStringAttributes[selector];
+        StringCriterion[] criteria = mStringCriteria[selector];
+        for (int i = 0; i < criteria.length; i++) {
+            if (!criteria[i].matches(getString(node, attributes[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getString(UiNodeAttributes node, int attribute) {
+        switch (attribute) {
+            case ATTR_RES:
+                return node.getResourceName();
+            case ATTR_CLASS:
+                return node.getClassName();
+            case ATTR_PKG:
+                return node.getPackageName();
+            case ATTR_TEXT:
+                return node.getText();
+            case ATTR_DESC:
+                return node.getContentDescription();
+            default:
+                throw new IllegalStateException("Unknown attribute: " + attribute);
+        }
+    }
+}
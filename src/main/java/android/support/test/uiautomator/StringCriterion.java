@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import java.util.regex.Pattern;
+
+/**
+ * A criteria used by {@link BySelector} to match a string attribute. Literal criteria (equals,
+ * starts with, ends with and contains) are evaluated with {@link String} operations, so only
+ * criteria created from a {@link Pattern} need the regular expression engine. The case
+ * insensitive literal criteria and the {@link #strict()} forms are only used to evaluate
+ * {@link UiSelector}s: the former compare the lower case forms of both strings, and the latter
+ * never match a missing value, in the way {@link UiSelector} always has.
+ */
+class StringCriterion {
+
+    static final int EQUALS = 0;
+    static final int STARTS_WITH = 1;
+    static final int ENDS_WITH = 2;
+    static final int CONTAINS = 3;
+    static final int STARTS_WITH_IGNORE_CASE = 4;
+    static final int CONTAINS_IGNORE_CASE = 5;
+    static final int REGEX = 6;
+
+    private final int mType;
+    private final String mValue;
+    private final Pattern mPattern;
+    private final boolean mStrict;
+
+    private StringCriterion(int type, String value, Pattern pattern, boolean strict) {
+        mType = type;
+        mValue = value;
+        mPattern = pattern;
+        mStrict = strict;
+    }
+
+    private StringCriterion(int type, String value, Pattern pattern) {
+        this(type, value, pattern, false);
+    }
+
+    /** Returns a criterion which matches values that are exactly equal to {@code value}. */
+    static StringCriterion equalTo(String value) {
+        return new StringCriterion(EQUALS, value, null);
+    }
+
+    /** Returns a criterion which matches values that start with {@code prefix}. */
+    static StringCriterion startsWith(String prefix) {
+        return new StringCriterion(STARTS_WITH, prefix, null);
+    }
+
+    /** Returns a criterion which matches values that end with {@code suffix}. */
+    static StringCriterion endsWith(String suffix) {
+        return new StringCriterion(ENDS_WITH, suffix, null);
+    }
+
+    /** Returns a criterion which matches values that contain {@code substring}. */
+    static StringCriterion contains(String substring) {
+        return new StringCriterion(CONTAINS, substring, null);
+    }
+
+    /**
+     * Returns a criterion which matches values that start with {@code prefix}, ignoring case.
+     */
+    static StringCriterion startsWithIgnoreCase(String prefix) {
+        return new StringCriterion(STARTS_WITH_IGNORE_CASE, prefix.toLowerCase(), null);
+    }
+
+    /** Returns a criterion which matches values that contain {@code substring}, ignoring case. */
+    static StringCriterion containsIgnoreCase(String substring) {
+        return new StringCriterion(CONTAINS_IGNORE_CASE, substring.toLowerCase(), null);
+    }
+
+    /** Returns a criterion which matches values that entirely match {@code pattern}. */
+    static StringCriterion matches(Pattern pattern) {
+        return new StringCriterion(REGEX, null, pattern);
+    }
+
+    /**
+     * Returns a criterion which matches the same values as this one, except that a null value
+     * never matches.
+     */
+    StringCriterion strict() {
+        return new StringCriterion(mType, mValue, mPattern, true);
+    }
+
+    /**
+     * Returns the type of this criterion: {@link #EQUALS}, {@link #STARTS_WITH},
+     * {@link #ENDS_WITH}, {@link #CONTAINS}, {@link #STARTS_WITH_IGNORE_CASE},
+     * {@link #CONTAINS_IGNORE_CASE} or {@link #REGEX}. Types are numbered in increasing order of
+     * evaluation cost.
+     */
+    int getType() {
+        return mType;
+    }
+
+    /**
+     * Returns the literal string for this criterion, in lower case for the case insensitive
+     * types, or null if it is a {@link #REGEX}.
+     */
+    String getValue() {
+        return mValue;
+    }
+
+    /**
+     * Returns true if {@code value} satisfies this criterion. A null value is treated as an empty
+     * string, unless this is a {@link #strict()} criterion.
+     */
+    boolean matches(CharSequence value) {
+        if (value == null && mStrict) {
+            return false;
+        }
+        if (mType == REGEX) {
+            return mPattern.matcher(value != null ? value : "").matches();
+        }
+
+        String string = value != null ? value.toString() : "";
+        switch (mType) {
+            case EQUALS:
+                return string.equals(mValue);
+            case STARTS_WITH:
+                return string.startsWith(mValue);
+            case ENDS_WITH:
+                return string.endsWith(mValue);
+            case CONTAINS:
+                return string.contains(mValue);
+            case STARTS_WITH_IGNORE_CASE:
+                return string.toLowerCase().startsWith(mValue);
+            case CONTAINS_IGNORE_CASE:
+                return string.toLowerCase().contains(mValue);
+            default:
+                throw new IllegalStateException("Unknown criterion type: " + mType);
+        }
+    }
+
+    /** Returns this criterion in the regular expression form used by earlier versions. */
+    @Override
+    public String toString() {
+        switch (mType) {
+            case EQUALS:
+                return Pattern.quote(mValue);
+            case STARTS_WITH:
+                return String.format("^%s.*$", Pattern.quote(mValue));
+            case ENDS_WITH:
+                return String.format("^.*%s$", Pattern.quote(mValue));
+            case CONTAINS:
+                return String.format("^.*%s.*$", Pattern.quote(mValue));
+            case STARTS_WITH_IGNORE_CASE:
+                return String.format("(?i)^%s.*$", Pattern.quote(mValue));
+            case CONTAINS_IGNORE_CASE:
+                return String.format("(?i)^.*%s.*$", Pattern.quote(mValue));
+            default:
+                return mPattern.toString();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import android.app.UiAutomation;
 import android.app.UiAutomation.AccessibilityEventFilter;
 import android.app.UiAutomation.OnAccessibilityEventListener;
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Display;
 import android.view.InputEvent;
@@ -40,13 +41,6 @@ public abstract class UiAutomatorBridge {
 
     private static final String LOG_TAG = UiAutomatorBridge.class.getSimpleName();
 
-   /**
-    * This value has the greatest bearing on the appearance of test execution speeds.
-    * This value is used as the minimum time to wait before considering the UI idle after
-    * each action.
-    */
-    private static final long QUIET_TIME_TO_BE_CONSIDERD_IDLE_STATE = 500;//ms
-
    /**
     * This is the maximum time the automation will wait for the UI to go idle. Execution
     * will resume normally anyway. This is to prevent waiting forever on display updates
@@ -60,6 +54,26 @@ public abstract class UiAutomatorBridge {
 
     private final QueryController mQueryController;
 
+    /**
+     * How long the UI is trusted to stay idle after a wait confirmed it, if nothing known to
+     * change it happens. Changes made out of band, such as an activity started by the test
+     * itself or by an app timer, are only noticed once their first event arrives, so after this
+     * long waitForIdle() checks again with {@link #IDLE_RECHECK_QUIET_TIME}.
+     */
+    private static final long IDLE_CONFIRMATION_LIFETIME = 500;//ms
+
+    // The quiet period which confirms that the UI is still idle once the confirmation expired
+    private static final long IDLE_RECHECK_QUIET_TIME = 100;//ms
+
+    private final Object mIdleLock = new Object();
+
+    // Bumped by every injected input, shell command and received accessibility event.
+    // waitForIdle() has nothing to wait for while it still equals mConfirmedIdleGeneration and
+    // the confirmation, made at mConfirmedIdleTime, has not expired.
+    private long mIdleGeneration = 0;
+    private long mConfirmedIdleGeneration = -1;
+    private long mConfirmedIdleTime;
+
     UiAutomatorBridge(UiAutomation uiAutomation) {
         mUiAutomation = uiAutomation;
         mInteractionController = new InteractionController(this);
@@ -83,10 +97,12 @@ public abstract class UiAutomatorBridge {
     }
 
     public boolean injectInputEvent(InputEvent event, boolean sync) {
+        updateIdleGeneration();
         return mUiAutomation.injectInputEvent(event, sync);
     }
 
     public boolean setRotation(int rotation) {
+        updateIdleGeneration();
         return mUiAutomation.setRotation(rotation);
     }
 
@@ -97,6 +113,9 @@ public abstract class UiAutomatorBridge {
         else
             info.flags |= AccessibilityServiceInfo.FLAG_INCLUDE_NOT_IMPORTANT_VIEWS;
         mUiAutomation.setServiceInfo(info);
+        updateIdleGeneration();
+        // The set of reported views changed without any event being sent
+        mQueryController.invalidateHierarchy();
     }
 
     public abstract int getRotation();
@@ -108,15 +127,61 @@ public abstract class UiAutomatorBridge {
     }
 
     public void waitForIdle(long timeout) {
-        try {
-            mUiAutomation.waitForIdle(QUIET_TIME_TO_BE_CONSIDERD_IDLE_STATE, timeout);
-        } catch (TimeoutException te) {
-            Log.w(LOG_TAG, "Could not detect idle state.", te);
+        long generation;
+        boolean recheck;
+        synchronized (mIdleLock) {
+            generation = mIdleGeneration;
+            if (generation == mConfirmedIdleGeneration) {
+                if (SystemClock.uptimeMillis() - mConfirmedIdleTime < IDLE_CONFIRMATION_LIFETIME) {
+                    // Nothing happened since the UI was last found idle
+                    return;
+                }
+                recheck = true;
+            } else {
+                recheck = false;
+            }
         }
+        if (recheck) {
+            // A short quiet period is enough to tell that the UI is still idle. Any event seen
+            // meanwhile bumps the generation, and the full wait below handles it.
+            try {
+                waitForQuietPeriod(IDLE_RECHECK_QUIET_TIME,
+                        Math.min(timeout, 2 * IDLE_RECHECK_QUIET_TIME));
+            } catch (TimeoutException e) {
+                // Fall through to the full wait
+            }
+            synchronized (mIdleLock) {
+                if (mIdleGeneration == generation) {
+                    mConfirmedIdleTime = SystemClock.uptimeMillis();
+                    return;
+                }
+                generation = mIdleGeneration;
+            }
+        }
+        if (!Configurator.getInstance().getIdleStrategy().waitForIdle(this, timeout)) {
+            Log.w(LOG_TAG, "Could not detect idle state.");
+            return;
+        }
+        synchronized (mIdleLock) {
+            // Events received while waiting are only known to have settled if another wait
+            // confirms it, which returns almost immediately when they have.
+            mConfirmedIdleGeneration = generation;
+            mConfirmedIdleTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Waits until no accessibility events have been received for {@code quietTime} milliseconds.
+     *
+     * @throws TimeoutException if that does not happen within {@code timeout} milliseconds
+     */
+    void waitForQuietPeriod(long quietTime, long timeout) throws TimeoutException {
+        mUiAutomation.waitForIdle(quietTime, timeout);
     }
 
     public AccessibilityEvent executeCommandAndWaitForAccessibilityEvent(Runnable command,
             AccessibilityEventFilter filter, long timeoutMillis) throws TimeoutException {
+        updateIdleGeneration();
         return mUiAutomation.executeAndWaitForEvent(command,
                 filter, timeoutMillis);
     }
@@ -150,9 +215,26 @@ public abstract class UiAutomatorBridge {
     }
 
     public boolean performGlobalAction(int action) {
+        updateIdleGeneration();
         return mUiAutomation.performGlobalAction(action);
     }
 
+    /** Called by the {@link QueryController} for every accessibility event it receives. */
+    void onAccessibilityEvent(AccessibilityEvent event) {
+        updateIdleGeneration();
+        Configurator.getInstance().getIdleStrategy().onAccessibilityEvent(event);
+    }
+
+    /**
+     * Records that the UI may no longer be idle. Called for every change uiautomator causes, and
+     * for changes it learns about through accessibility events.
+     */
+    void updateIdleGeneration() {
+        synchronized (mIdleLock) {
+            mIdleGeneration++;
+        }
+    }
+
     public abstract Display getDefaultDisplay();
 
     public abstract long getSystemLongPressTime();
@@ -141,6 +141,6 @@ public class UiCollection extends UiObject {
         Tracer.trace(childPattern);
         UiSelector patternSelector =
                 UiSelector.patternBuilder(getSelector(), UiSelector.patternBuilder(childPattern));
-        return getQueryController().getPatternCount(patternSelector);
+        return getPatternCount(patternSelector);
     }
 }
@@ -31,6 +31,7 @@ import android.os.RemoteException;
 import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.Xml;
 import android.view.Display;
 import android.view.KeyEvent;
 import android.view.Surface;
@@ -46,7 +47,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -80,7 +83,13 @@ public class UiDevice implements Searchable {
     private static UiDevice sInstance;
 
     // Get wait functionality from a mixin
-    private WaitMixin<UiDevice> mWaitMixin = new WaitMixin<UiDevice>(this);
+    private WaitMixin<UiDevice> mWaitMixin = new WaitMixin<UiDevice>(this, this);
+
+    // Hierarchy shared by BySelector queries until an accessibility event invalidates it
+    private HierarchySnapshot mSnapshot;
+
+    // Remembers the hierarchy seen by the previous call to dumpWindowHierarchyDiff
+    private final HierarchyDiffDumper mDiffDumper = new HierarchyDiffDumper();
 
 
     /**
@@ -151,7 +160,7 @@ public class UiDevice implements Searchable {
 
     /** Returns whether there is a match for the given {@code selector} criteria. */
     public boolean hasObject(BySelector selector) {
-        AccessibilityNodeInfo node = ByMatcher.findMatch(this, selector, getWindowRoots());
+        AccessibilityNodeInfo node = ByMatcher.findMatch(this, selector);
         if (node != null) {
             node.recycle();
             return true;
@@ -161,20 +170,43 @@ public class UiDevice implements Searchable {
 
     /** Returns the first object to match the {@code selector} criteria. */
     public UiObject2 findObject(BySelector selector) {
-        AccessibilityNodeInfo node = ByMatcher.findMatch(this, selector, getWindowRoots());
+        AccessibilityNodeInfo node = ByMatcher.findMatch(this, selector);
         return node != null ? new UiObject2(this, selector, node) : null;
     }
 
     /** Returns all objects that match the {@code selector} criteria. */
     public List<UiObject2> findObjects(BySelector selector) {
         List<UiObject2> ret = new ArrayList<UiObject2>();
-        for (AccessibilityNodeInfo node : ByMatcher.findMatches(this, selector, getWindowRoots())) {
+        for (AccessibilityNodeInfo node : ByMatcher.findMatches(this, selector)) {
             ret.add(new UiObject2(this, selector, node));
         }
 
         return ret;
     }
 
+    /**
+     * Returns all objects that match each of the {@code selectors}. The hierarchy is only
+     * traversed once, however many selectors are given.
+     *
+     * @param selectors The criteria to search for, by name.
+     * @return A map from each name in {@code selectors} to the list of objects which matched the
+     * corresponding criteria, in the iteration order of {@code selectors}.
+     */
+    public Map<String, List<UiObject2>> findObjects(Map<String, BySelector> selectors) {
+        Map<String, List<UiObject2>> ret = new LinkedHashMap<String, List<UiObject2>>();
+        for (Map.Entry<String, List<AccessibilityNodeInfo>> entry :
+                ByMatcher.findMatches(this, selectors).entrySet()) {
+            BySelector selector = selectors.get(entry.getKey());
+            List<UiObject2> objects = new ArrayList<UiObject2>();
+            for (AccessibilityNodeInfo node : entry.getValue()) {
+                objects.add(new UiObject2(this, selector, node));
+            }
+            ret.put(entry.getKey(), objects);
+        }
+
+        return ret;
+    }
+
 
     /**
      * Waits for given the {@code condition} to be met.
@@ -950,7 +982,42 @@ public class UiDevice implements Searchable {
      * @throws IOException
      */
     public void dumpWindowHierarchy(OutputStream out) throws IOException {
-        AccessibilityNodeInfoDumper.dumpWindowHierarchy(this, out);
+        AccessibilityNodeInfoDumper.dumpWindowHierarchy(Xml.newSerializer(), out,
+                getHierarchySnapshot().getRoots(), getDisplayRotation(), getDisplayWidth(),
+                getDisplayHeight());
+    }
+
+    /**
+     * Dump the current window hierarchy to an {@link java.io.OutputStream} in a compact binary
+     * format. This is considerably faster and smaller than {@link #dumpWindowHierarchy(
+     * OutputStream)}, and the result can be converted back to the same XML on the host with the
+     * hierarchy-converter tool.
+     *
+     * @param out The output stream that the window hierarchy information is written to.
+     * @throws IOException
+     */
+    public void dumpWindowHierarchyBinary(OutputStream out) throws IOException {
+        BinaryHierarchyDumper.dumpWindowHierarchy(out, getHierarchySnapshot().getRoots(),
+                getDisplayRotation(), getDisplayWidth(), getDisplayHeight());
+    }
+
+    /**
+     * Dump only the parts of the window hierarchy that changed since the previous call to this
+     * method, as XML listing the removed, inserted and changed nodes. Nodes are identified by
+     * their window id and their path of child indices, and changed nodes only include the
+     * attributes that changed. The first call lists every node as inserted.
+     *
+     * @param out The output stream that the differences are written to.
+     * @throws IOException
+     */
+    public void dumpWindowHierarchyDiff(OutputStream out) throws IOException {
+        HierarchySnapshot.Node[] roots = getHierarchySnapshot().getRoots();
+        int[] windowIds = new int[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            windowIds[i] = roots[i].getInfo().getWindowId();
+        }
+        mDiffDumper.dumpWindowHierarchyDiff(Xml.newSerializer(), out, roots, windowIds,
+                getDisplayRotation(), getDisplayWidth(), getDisplayHeight());
     }
 
     /**
@@ -1057,6 +1124,8 @@ public class UiDevice implements Searchable {
      * @hide
      */
     public String executeShellCommand(String cmd) throws IOException {
+        // Commands such as "am start" change the UI without injecting any input
+        getAutomatorBridge().updateIdleGeneration();
         ParcelFileDescriptor pfd = mInstrumentation.getUiAutomation().executeShellCommand(cmd);
         byte[] buf = new byte[512];
         int bytesRead;
@@ -1066,13 +1135,47 @@ public class UiDevice implements Searchable {
             stdout.append(new String(buf, 0, bytesRead));
         }
         fis.close();
+        getAutomatorBridge().updateIdleGeneration();
         return stdout.toString();
     }
 
+    /**
+     * Returns a {@link HierarchySnapshot} of all window roots which reflects the current state of
+     * the UI. The previous snapshot is reused if no accessibility event has invalidated it since it
+     * was captured.
+     */
+    HierarchySnapshot getHierarchySnapshot() {
+        waitForIdle();
+
+        // Read the generation before capturing, so that any event received during the capture
+        // invalidates the new snapshot.
+        long generation = getAutomatorBridge().getQueryController().getHierarchyGeneration();
+        synchronized (this) {
+            if (mSnapshot == null || mSnapshot.getGeneration() != generation) {
+                // Snapshots may still be referenced by an in-flight query, so the old one is left
+                // to the garbage collector rather than recycled; see HierarchySnapshot.
+                AccessibilityNodeInfo[] roots = fetchWindowRoots();
+                mSnapshot = HierarchySnapshot.capture(generation, roots);
+                for (AccessibilityNodeInfo root : roots) {
+                    root.recycle();
+                }
+                if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+                    Log.d(LOG_TAG, String.format("Captured %d nodes from %d windows with %d "
+                            + "fetches", mSnapshot.getNodeCount(), roots.length,
+                            mSnapshot.getFetchCount()));
+                }
+            }
+            return mSnapshot;
+        }
+    }
+
     /** Returns a list containing the root {@link AccessibilityNodeInfo}s for each active window */
     AccessibilityNodeInfo[] getWindowRoots() {
         waitForIdle();
+        return fetchWindowRoots();
+    }
 
+    private AccessibilityNodeInfo[] fetchWindowRoots() {
         ArrayList<AccessibilityNodeInfo> ret = new ArrayList<AccessibilityNodeInfo>();
         // Support multi-window searches for API level 21 and up
         if (UiDevice.API_LEVEL_ACTUAL >= Build.VERSION_CODES.LOLLIPOP) {
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+/**
+ * The attributes of a single node in the window hierarchy that uiautomator searches and dumps.
+ * {@link UiNodeMatcher}, {@link AccessibilityNodeInfoDumper} and {@link BinaryHierarchyDumper}
+ * only depend on this interface, so they can also run against an {@link InMemoryUiNode}
+ * hierarchy off-device. On the device, {@link HierarchySnapshot.Node} adapts a captured
+ * {@link android.view.accessibility.AccessibilityNodeInfo}.
+ */
+interface UiNode {
+
+    /** Returns the index of this node underneath its parent. */
+    int getIndex();
+
+    /** Returns the parent of this node, or null if it is a root. */
+    UiNode getParent();
+
+    /** Returns the number of visible children of this node. */
+    int getChildCount();
+
+    /** Returns the visible child at position {@code i}. */
+    UiNode getChild(int i);
+
+    CharSequence getText();
+
+    CharSequence getContentDescription();
+
+    CharSequence getClassName();
+
+    CharSequence getPackageName();
+
+    String getResourceName();
+
+    boolean isCheckable();
+
+    boolean isChecked();
+
+    boolean isClickable();
+
+    boolean isEnabled();
+
+    boolean isFocusable();
+
+    boolean isFocused();
+
+    boolean isScrollable();
+
+    boolean isLongClickable();
+
+    boolean isPassword();
+
+    boolean isSelected();
+
+    boolean isVisibleToUser();
+
+    /**
+     * Copies the bounds of this node in screen coordinates into {@code outBounds}, as left, top,
+     * right and bottom.
+     */
+    void getBoundsInScreen(int[] outBounds);
+}
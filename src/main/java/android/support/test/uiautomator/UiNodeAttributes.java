@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+/**
+ * The attributes of a {@link UiNode}, read at most once each. Boolean attributes are read
+ * together on first use and packed into a bit field, and string attributes are converted to
+ * {@link String}s on first use. Missing string attributes are null, and left to each
+ * {@link StringCriterion} to interpret.
+ * <p/>
+ * A record is reused for many nodes during a traversal by calling {@link #reset(UiNode)}.
+ */
+class UiNodeAttributes {
+
+    // Boolean attributes, as bits of getFlags()
+    static final int FLAG_CHECKABLE = 1 << 0;
+    static final int FLAG_CHECKED = 1 << 1;
+    static final int FLAG_CLICKABLE = 1 << 2;
+    static final int FLAG_ENABLED = 1 << 3;
+    static final int FLAG_FOCUSABLE = 1 << 4;
+    static final int FLAG_FOCUSED = 1 << 5;
+    static final int FLAG_SCROLLABLE = 1 << 6;
+    static final int FLAG_LONG_CLICKABLE = 1 << 7;
+    static final int FLAG_PASSWORD = 1 << 8;
+    static final int FLAG_SELECTED = 1 << 9;
+    static final int FLAG_VISIBLE_TO_USER = 1 << 10;
+
+    // Bits of mLoaded for each attribute which has been read
+    private static final int LOADED_FLAGS = 1 << 0;
+    private static final int LOADED_TEXT = 1 << 1;
+    private static final int LOADED_DESC = 1 << 2;
+    private static final int LOADED_CLASS = 1 << 3;
+    private static final int LOADED_PKG = 1 << 4;
+    private static final int LOADED_RES = 1 << 5;
+
+    private UiNode mNode;
+    private int mLoaded;
+    private int mFlags;
+    private String mText;
+    private String mContentDescription;
+    private String mClassName;
+    private String mPackageName;
+    private String mResourceName;
+
+    /** Makes this record describe {@code node}, discarding any attributes read so far. */
+    void reset(UiNode node) {
+        mNode = node;
+        mLoaded = 0;
+        mText = null;
+        mContentDescription = null;
+        mClassName = null;
+        mPackageName = null;
+        mResourceName = null;
+    }
+
+    UiNode getNode() {
+        return mNode;
+    }
+
+    /** Returns the boolean attributes of the node as a combination of the FLAG_* bits. */
+    int getFlags() {
+        if ((mLoaded & LOADED_FLAGS) == 0) {
+            UiNode node = mNode;
+            int flags = 0;
+            if (node.isCheckable()) flags |= FLAG_CHECKABLE;
+            if (node.isChecked()) flags |= FLAG_CHECKED;
+            if (node.isClickable()) flags |= FLAG_CLICKABLE;
+            if (node.isEnabled()) flags |= FLAG_ENABLED;
+            if (node.isFocusable()) flags |= FLAG_FOCUSABLE;
+            if (node.isFocused()) flags |= FLAG_FOCUSED;
+            if (node.isScrollable()) flags |= FLAG_SCROLLABLE;
+            if (node.isLongClickable()) flags |= FLAG_LONG_CLICKABLE;
+            if (node.isPassword()) flags |= FLAG_PASSWORD;
+            if (node.isSelected()) flags |= FLAG_SELECTED;
+            if (node.isVisibleToUser()) flags |= FLAG_VISIBLE_TO_USER;
+            mFlags = flags;
+            mLoaded |= LOADED_FLAGS;
+        }
+        return mFlags;
+    }
+
+    String getText() {
+        if ((mLoaded & LOADED_TEXT) == 0) {
+            mText = toString(mNode.getText());
+            mLoaded |= LOADED_TEXT;
+        }
+        return mText;
+    }
+
+    String getContentDescription() {
+        if ((mLoaded & LOADED_DESC) == 0) {
+            mContentDescription = toString(mNode.getContentDescription());
+            mLoaded |= LOADED_DESC;
+        }
+        return mContentDescription;
+    }
+
+    String getClassName() {
+        if ((mLoaded & LOADED_CLASS) == 0) {
+            mClassName = toString(mNode.getClassName());
+            mLoaded |= LOADED_CLASS;
+        }
+        return mClassName;
+    }
+
+    String getPackageName() {
+        if ((mLoaded & LOADED_PKG) == 0) {
+            mPackageName = toString(mNode.getPackageName());
+            mLoaded |= LOADED_PKG;
+        }
+        return mPackageName;
+    }
+
+    String getResourceName() {
+        if ((mLoaded & LOADED_RES) == 0) {
+            mResourceName = toString(mNode.getResourceName());
+            mLoaded |= LOADED_RES;
+        }
+        return mResourceName;
+    }
+
+    private static String toString(CharSequence value) {
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Searches a {@link UiNode} hierarchy for nodes that match {@link BySelector} criteria. This class
+ * has no Android dependencies; {@link ByMatcher} uses it to search {@link HierarchySnapshot}s on
+ * the device.
+ * <p/>
+ * A matcher can evaluate several selectors in the same traversal, so that every node is fetched
+ * and read once no matter how many selectors are searched for.
+ * <p/>
+ * The traversal is iterative and allocates nothing per visited node. Its state lives in two
+ * stacks which grow as needed and are reused by every search made with the same instance:
+ * <ul>
+ * <li>a stack of frames, one for each node on the path from the root to the current node</li>
+ * <li>a stack of {@link PartialMatch}es. Every partial match created at a node stays on the stack
+ * while that node's subtree is visited, so the stack always holds exactly the partial matches
+ * that the current node has to update. They are finalized and reused once the traversal leaves
+ * the node where they were created.</li>
+ * </ul>
+ * Children are only fetched while a node below the current depth could still match, either the
+ * selector itself or an unsatisfied child selector of a partial match on the stack. A selector
+ * such as {@code By.pkg("x").depth(0, 3)} therefore only visits the top levels of the hierarchy.
+ * <p/>
+ * Selectors are evaluated through their compiled {@link SelectorPlan}s, against a
+ * {@link UiNodeAttributes} record kept for each frame. Every attribute of a node is therefore read
+ * at most once, however many selectors and child selectors test it.
+ * <p/>
+ * Instances are not thread safe.
+ */
+class UiNodeMatcher {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final SelectorPlan[] mPlans;
+    private final boolean mShortCircuit;
+
+    // Frame stack: the node attributes, the next child to visit and the partial match stack size
+    // on entry. Attribute records beyond mFrameCount are kept for reuse.
+    private UiNodeAttributes[] mFrameNodes = new UiNodeAttributes[INITIAL_CAPACITY];
+    private int[] mFrameNextChild = new int[INITIAL_CAPACITY];
+    private int[] mFrameMatchStart = new int[INITIAL_CAPACITY];
+    private int mFrameCount;
+
+    // Partial match stack. Entries beyond mMatchCount are kept for reuse.
+    private PartialMatch[] mMatches = new PartialMatch[INITIAL_CAPACITY];
+    private int mMatchCount;
+
+    /**
+     * @param selector The criteria used to determine if a {@link UiNode} is a match.
+     * @param shortCircuit If true, searches return early when the first match is found.
+     */
+    UiNodeMatcher(BySelector selector, boolean shortCircuit) {
+        this(new BySelector[] { selector }, shortCircuit);
+    }
+
+    /**
+     * @param selectors The criteria used to determine if a {@link UiNode} is a match. Each
+     * selector is evaluated independently.
+     * @param shortCircuit If true, searches return early when the first match for any of the
+     * {@code selectors} is found.
+     */
+    UiNodeMatcher(BySelector[] selectors, boolean shortCircuit) {
+        mPlans = new SelectorPlan[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            mPlans[i] = selectors[i].compile();
+        }
+        mShortCircuit = shortCircuit;
+    }
+
+    /**
+     * Searches each of the {@code roots} in order, and returns a list of nodes which match the
+     * {@code selector} criteria. Subtrees under nodes which are not visible are skipped.
+     */
+    List<UiNode> findMatches(UiNode... roots) {
+        return findAllMatches(roots).get(0);
+    }
+
+    /**
+     * Searches each of the {@code roots} in order, and returns a list of the nodes which match
+     * each of the {@code selectors}, in the same order as the selectors. Subtrees under nodes
+     * which are not visible are skipped.
+     */
+    List<List<UiNode>> findAllMatches(UiNode... roots) {
+        List<List<UiNode>> ret = new ArrayList<List<UiNode>>(mPlans.length);
+        for (int i = 0; i < mPlans.length; i++) {
+            ret.add(new ArrayList<UiNode>());
+        }
+        for (UiNode root : roots) {
+            // Return early if we found a match and shortCircuit is true
+            if (search(root, 0, true, ret) && mShortCircuit) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns true if {@code node} matches the criteria of the first selector, including any child
+     * selectors, without searching for other matches in its subtree.
+     *
+     * @param node The node to check.
+     * @param depth The distance between {@code node} and the root of the search.
+     */
+    boolean isMatch(UiNode node, int depth) {
+        return search(node, depth, false, null);
+    }
+
+    /**
+     * Traverses the hierarchy under {@code start} depth first.
+     *
+     * @param start The first node to visit.
+     * @param depth The distance between {@code start} and the root of the search.
+     * @param findAll If true, every visible node is evaluated against the selectors and matches
+     * are added to {@code ret}. Otherwise only {@code start} is evaluated against the first
+     * selector, and its subtree is visited to resolve its child selectors.
+     * @param ret The lists to add the matches for each selector to, or null.
+     * @return Whether {@code start} was a full match if {@code findAll} is false, or whether any
+     * match was found otherwise.
+     */
+    private boolean search(UiNode start, int depth, boolean findAll, List<List<UiNode>> ret) {
+        UiNodeAttributes attributes = load(start);
+        if (findAll && !isVisibleToUser(attributes)) {
+            return false;
+        }
+        enter(attributes, depth, findAll ? mPlans.length : 1);
+
+        boolean matched = false;
+        while (mFrameCount > 0) {
+            int top = mFrameCount - 1;
+            UiNode node = mFrameNodes[top].getNode();
+            int next = mFrameNextChild[top];
+            // Skip the rest of the subtree once nothing below this depth could match
+            if (next < node.getChildCount() && canMatchBelow(depth + mFrameCount, findAll)) {
+                mFrameNextChild[top] = next + 1;
+                attributes = load(node.getChild(next));
+
+                // Don't bother searching the subtree if it is not visible
+                if (!findAll || isVisibleToUser(attributes)) {
+                    enter(attributes, depth + mFrameCount, findAll ? mPlans.length : 0);
+                }
+                continue;
+            }
+
+            if (exit(node, ret)) {
+                matched = true;
+
+                // Return early if we found a match and shortCircuit is true
+                if (mShortCircuit && ret != null) {
+                    reset();
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /** Returns the attribute record of the next frame, reset to describe {@code node}. */
+    private UiNodeAttributes load(UiNode node) {
+        if (mFrameCount == mFrameNodes.length) {
+            growFrames();
+        }
+        UiNodeAttributes ret = mFrameNodes[mFrameCount];
+        if (ret == null) {
+            ret = new UiNodeAttributes();
+            mFrameNodes[mFrameCount] = ret;
+        }
+        ret.reset(node);
+        return ret;
+    }
+
+    private static boolean isVisibleToUser(UiNodeAttributes node) {
+        return (node.getFlags() & UiNodeAttributes.FLAG_VISIBLE_TO_USER) != 0;
+    }
+
+    /**
+     * Pushes the frame for {@code node}, which must have been returned by {@link #load(UiNode)},
+     * updates the partial matches of its ancestors and starts a new partial match for each of the
+     * first {@code evaluate} selectors that the node matches.
+     */
+    private void enter(UiNodeAttributes node, int depth, int evaluate) {
+        int matchStart = mMatchCount;
+        mFrameNextChild[mFrameCount] = 0;
+        mFrameMatchStart[mFrameCount] = matchStart;
+        mFrameCount++;
+
+        // Update the partial matches created by ancestors. Matches created here are only updated
+        // by descendants.
+        for (int i = 0; i < matchStart; i++) {
+            PartialMatch parent = mMatches[i];
+            SelectorPlan plan = parent.mPlan;
+            int[] childSelectors = plan.getChildren(parent.mSelector);
+            for (int j = 0; j < childSelectors.length; j++) {
+                // Another match for a child selector which is already satisfied changes nothing
+                if (parent.mCompleted.get(j)) {
+                    continue;
+                }
+                if (plan.accept(node, childSelectors[j], depth - parent.mDepth)) {
+                    obtainMatch().reset(plan, childSelectors[j], depth, parent, j);
+                }
+            }
+        }
+
+        // Create new matches, if necessary
+        for (int i = 0; i < evaluate; i++) {
+            if (mPlans[i].accept(node, SelectorPlan.ROOT, depth)) {
+                obtainMatch().reset(mPlans[i], SelectorPlan.ROOT, depth, null, i);
+            }
+        }
+    }
+
+    /**
+     * Returns true if a node at {@code depth} could still match the selector, or one of the child
+     * selectors which the partial matches on the stack are waiting for. This only considers depth
+     * bounds, so that subtrees which cannot contribute to the result are never fetched.
+     *
+     * @param depth The distance between the node and the root of the search.
+     * @param findAll Whether the node would be evaluated against the top level selector.
+     */
+    private boolean canMatchBelow(int depth, boolean findAll) {
+        if (findAll) {
+            for (SelectorPlan plan : mPlans) {
+                if (depth <= plan.getMaxDepth(SelectorPlan.ROOT)) {
+                    return true;
+                }
+            }
+        }
+        for (int i = 0; i < mMatchCount; i++) {
+            PartialMatch match = mMatches[i];
+            int[] childSelectors = match.mPlan.getChildren(match.mSelector);
+            for (int j = 0; j < childSelectors.length; j++) {
+                if (!match.mCompleted.get(j) &&
+                        depth - match.mDepth <= match.mPlan.getMaxDepth(childSelectors[j])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pops the current frame and finalizes the partial matches created at its node. Complete
+     * child matches are recorded in their parent.
+     *
+     * @param node The node of the current frame.
+     * @param ret The lists to add the node to for each selector it fully matched, or null.
+     * @return true if the node fully matched any of the selectors.
+     */
+    private boolean exit(UiNode node, List<List<UiNode>> ret) {
+        mFrameCount--;
+        mFrameNodes[mFrameCount].reset(null);
+        int matchStart = mFrameMatchStart[mFrameCount];
+
+        boolean matched = false;
+        for (int i = matchStart; i < mMatchCount; i++) {
+            PartialMatch match = mMatches[i];
+            if (match.isComplete()) {
+                if (match.mParent != null) {
+                    match.mParent.mCompleted.set(match.mSelectorIndex);
+                } else {
+                    matched = true;
+                    if (ret != null) {
+                        ret.get(match.mSelectorIndex).add(node);
+                    }
+                }
+            }
+            match.mParent = null;
+        }
+        mMatchCount = matchStart;
+        return matched;
+    }
+
+    /** Abandons the current traversal. */
+    private void reset() {
+        while (mFrameCount > 0) {
+            mFrameNodes[--mFrameCount].reset(null);
+        }
+        while (mMatchCount > 0) {
+            mMatches[--mMatchCount].mParent = null;
+        }
+    }
+
+    private PartialMatch obtainMatch() {
+        if (mMatchCount == mMatches.length) {
+            PartialMatch[] grown = new PartialMatch[mMatches.length * 2];
+            System.arraycopy(mMatches, 0, grown, 0, mMatchCount);
+            mMatches = grown;
+        }
+        PartialMatch ret = mMatches[mMatchCount];
+        if (ret == null) {
+            ret = new PartialMatch();
+            mMatches[mMatchCount] = ret;
+        }
+        mMatchCount++;
+        return ret;
+    }
+
+    private void growFrames() {
+        int capacity = mFrameNodes.length * 2;
+        UiNodeAttributes[] nodes = new UiNodeAttributes[capacity];
+        System.arraycopy(mFrameNodes, 0, nodes, 0, mFrameCount);
+        mFrameNodes = nodes;
+        int[] nextChild = new int[capacity];
+        System.arraycopy(mFrameNextChild, 0, nextChild, 0, mFrameCount);
+        mFrameNextChild = nextChild;
+        int[] matchStart = new int[capacity];
+        System.arraycopy(mFrameMatchStart, 0, matchStart, 0, mFrameCount);
+        mFrameMatchStart = matchStart;
+    }
+
+    /**
+     * A {@link PartialMatch} instance represents a potential match against the given
+     * {@link BySelector}. Attributes of the node itself have been evaluated, but any child
+     * selectors have not, since we must first visit the subtree under the node before we can tell
+     * if the child selectors were matched. Instances are pooled by the matcher.
+     */
+    private static class PartialMatch {
+        private SelectorPlan mPlan;
+        // The number of the matched selector within mPlan
+        private int mSelector;
+        private int mDepth;
+        // The match whose child selector this one satisfies, or null for the top level selector
+        private PartialMatch mParent;
+        // The position of mSelector among the child selectors of the parent, or of mPlan among
+        // the top level plans if there is no parent
+        private int mSelectorIndex;
+        // Bit i is set once child selector i has been fully matched
+        private final BitSet mCompleted = new BitSet();
+
+        void reset(SelectorPlan plan, int selector, int depth, PartialMatch parent,
+                int selectorIndex) {
+            mPlan = plan;
+            mSelector = selector;
+            mDepth = depth;
+            mParent = parent;
+            mSelectorIndex = selectorIndex;
+            mCompleted.clear();
+        }
+
+        /** Returns true if every child selector has been fully matched. */
+        boolean isComplete() {
+            return mCompleted.nextClearBit(0) >= mPlan.getChildren(mSelector).length;
+        }
+    }
+}
@@ -66,11 +66,25 @@ public class UiObject {
      **/
     protected static final int FINGER_TOUCH_HALF_WIDTH = 20;
 
+    // While waiting for a selector, searches are retried as soon as the hierarchy changes.
+    // Otherwise the interval between searches starts here and doubles up to
+    // WAIT_FOR_SELECTOR_POLL.
+    private static final long WAIT_FOR_SELECTOR_MIN_POLL = 50;
+
     private final UiSelector mUiSelector;
     private final UiDevice mDevice;
 
     private final Configurator mConfig = Configurator.getInstance();
 
+    // The node last found for the selector, the root of the window it was found in, and the
+    // hierarchy generation at the time. It is reused while the hierarchy has not changed, saving
+    // a search from the root. A UiObject may be shared by several threads, so the cache is only
+    // read and replaced with mCacheLock held.
+    private final Object mCacheLock = new Object();
+    private AccessibilityNodeInfo mCachedNode;
+    private AccessibilityNodeInfo mCachedRoot;
+    private long mCachedGeneration;
+
     /**
      * Constructs a UiObject to represent a view that matches the specified
      * selector criteria.
@@ -130,6 +144,15 @@ public class UiObject {
         return mDevice.getAutomatorBridge().getInteractionController();
     }
 
+    /**
+     * Retrieves the {@link UiDevice} this object searches, for example to run its watchers.
+     *
+     * @return {@link UiDevice}
+     */
+    UiDevice getDevice() {
+        return mDevice;
+    }
+
     /**
      * Creates a new UiObject for a child view that is under the present UiObject.
      *
@@ -181,25 +204,215 @@ public class UiObject {
      * @since API Level 16
      */
     protected AccessibilityNodeInfo findAccessibilityNodeInfo(long timeout) {
-        AccessibilityNodeInfo node = null;
+        AccessibilityNodeInfo node = getCachedNode();
+        if (node != null) {
+            return node;
+        }
+
+        QueryController queryController = getQueryController();
         long startMills = SystemClock.uptimeMillis();
-        long currentMills = 0;
-        while (currentMills <= timeout) {
-            node = getQueryController().findAccessibilityNodeInfo(mUiSelector);
+        long interval = WAIT_FOR_SELECTOR_MIN_POLL;
+        while (true) {
+            // Read the generation before searching, so that a change which happens during the
+            // search triggers an immediate retry.
+            long generation = queryController.getHierarchyGeneration();
+            node = findNode(mUiSelector);
             if (node != null) {
+                setCachedNode(node, generation);
                 break;
             } else {
                 // does nothing if we're reentering another runWatchers()
                 mDevice.runWatchers();
             }
-            currentMills = SystemClock.uptimeMillis() - startMills;
-            if(timeout > 0) {
-                SystemClock.sleep(WAIT_FOR_SELECTOR_POLL);
+            long remaining = timeout - (SystemClock.uptimeMillis() - startMills);
+            if (remaining <= 0) {
+                break;
+            }
+            interval = waitForSearchRetry(generation, interval, remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                // Give up, and leave the interrupt for the caller to handle
+                break;
             }
         }
         return node;
     }
 
+    /**
+     * Searches once for {@code selector}, in the hierarchy snapshot shared with
+     * {@link BySelector} searches if that is enabled in the {@link Configurator}, or else in the
+     * active window.
+     * @return AccessibilityNodeInfo if found else null
+     */
+    AccessibilityNodeInfo findNode(UiSelector selector) {
+        if (Configurator.getInstance().isUiSelectorSnapshotSearchEnabled()) {
+            HierarchySnapshot.Node root = getSnapshotRoot();
+            if (root != null) {
+                // The plan returns nodes of the tree it searched
+                HierarchySnapshot.Node match =
+                        (HierarchySnapshot.Node) selector.compile().findMatch(root);
+                // Snapshot nodes must not be recycled, so callers are given a copy
+                return match != null ? AccessibilityNodeInfo.obtain(match.getInfo()) : null;
+            }
+        }
+        return getQueryController().findAccessibilityNodeInfo(selector);
+    }
+
+    /**
+     * Searches the subtree under {@code container} once for {@code selector}, in the same
+     * hierarchy as {@link #findNode(UiSelector)}. The container is searched directly if it is not
+     * part of the snapshot.
+     * @return AccessibilityNodeInfo if found else null
+     */
+    AccessibilityNodeInfo findNodeInContainer(UiSelector selector,
+            AccessibilityNodeInfo container) {
+        if (Configurator.getInstance().isUiSelectorSnapshotSearchEnabled()) {
+            HierarchySnapshot.Node root = mDevice.getHierarchySnapshot().getNode(container);
+            if (root != null) {
+                HierarchySnapshot.Node match = (HierarchySnapshot.Node)
+                        selector.compile().findMatchInContainer(root);
+                return match != null ? AccessibilityNodeInfo.obtain(match.getInfo()) : null;
+            }
+        }
+        return getQueryController().findAccessibilityNodeInfo(selector, container);
+    }
+
+    /**
+     * Counts the pattern matches of {@code selector}, in the same hierarchy as
+     * {@link #findNode(UiSelector)}.
+     * @return number of pattern matches
+     */
+    int getPatternCount(UiSelector selector) {
+        if (Configurator.getInstance().isUiSelectorSnapshotSearchEnabled()) {
+            HierarchySnapshot.Node root = getSnapshotRoot();
+            if (root != null) {
+                return selector.compile().getPatternCount(root);
+            }
+        }
+        return getQueryController().getPatternCount(selector);
+    }
+
+    /**
+     * Returns the snapshot node of the active window's root, which {@link UiSelector} searches
+     * start from, or null if the root is not part of the snapshot (e.g. it is not visible to the
+     * user) and the active window must be searched directly.
+     */
+    private HierarchySnapshot.Node getSnapshotRoot() {
+        HierarchySnapshot snapshot = mDevice.getHierarchySnapshot();
+        AccessibilityNodeInfo rootNode = getQueryController().getRootNode();
+        if (rootNode == null) {
+            return null;
+        }
+        HierarchySnapshot.Node root = snapshot.getNode(rootNode);
+        rootNode.recycle();
+        return root;
+    }
+
+    /**
+     * Returns a copy of the node last found for the selector if it is still valid: the hierarchy
+     * has not changed since it was found, the active window is still the one it was found in,
+     * and it can be refreshed, is visible, and still has the attributes the selector asks for.
+     * Otherwise the cached node is discarded.
+     * <p/>
+     * The active window is fetched on every check, so a window which was opened out of band is
+     * noticed even before any of its accessibility events arrive.
+     * @return AccessibilityNodeInfo or null if the selector must be searched for
+     */
+    AccessibilityNodeInfo getCachedNode() {
+        synchronized (mCacheLock) {
+            if (mCachedNode == null) {
+                return null;
+            }
+        }
+        // Let pending events arrive first, so that they can invalidate the node
+        mDevice.getAutomatorBridge().waitForIdle();
+        AccessibilityNodeInfo root = getQueryController().getRootNode();
+        try {
+            synchronized (mCacheLock) {
+                if (mCachedNode == null) {
+                    return null;
+                }
+                if (root != null && root.equals(mCachedRoot)
+                        && getQueryController().getHierarchyGeneration() == mCachedGeneration
+                        && mCachedNode.refresh() && mCachedNode.isVisibleToUser()
+                        && mUiSelector.isAttributeMatchFor(mCachedNode)) {
+                    // Callers may recycle the node they are given
+                    return AccessibilityNodeInfo.obtain(mCachedNode);
+                }
+                clearCachedNode();
+                return null;
+            }
+        } finally {
+            if (root != null) {
+                root.recycle();
+            }
+        }
+    }
+
+    /**
+     * Remembers the {@code node} found for the selector when the hierarchy was at
+     * {@code generation}, along with the root of the active window. Nodes found with container
+     * or pattern selectors are not cached, since their match depends on more than the node's own
+     * attributes.
+     */
+    private void setCachedNode(AccessibilityNodeInfo node, long generation) {
+        AccessibilityNodeInfo root = null;
+        if (!mUiSelector.hasContainerSelector() && !mUiSelector.hasPatternSelector()) {
+            root = getQueryController().getRootNode();
+        }
+        synchronized (mCacheLock) {
+            clearCachedNode();
+            if (root != null) {
+                mCachedNode = AccessibilityNodeInfo.obtain(node);
+                mCachedRoot = root;
+                mCachedGeneration = generation;
+            }
+        }
+    }
+
+    /** Recycles the cached node, if any. Must be called with {@code mCacheLock} held. */
+    private void clearCachedNode() {
+        if (mCachedNode != null) {
+            mCachedNode.recycle();
+            mCachedRoot.recycle();
+            mCachedNode = null;
+            mCachedRoot = null;
+        }
+    }
+
+    /** Returns true if a node found earlier is cached, whether or not it is still valid. */
+    boolean hasCachedNode() {
+        synchronized (mCacheLock) {
+            return mCachedNode != null;
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            // Nobody else can reach the cached node anymore, so return it to the pool
+            synchronized (mCacheLock) {
+                clearCachedNode();
+            }
+        } finally {
+            super.finalize();
+        }
+    }
+
+    /**
+     * Waits until the hierarchy changes from {@code generation} or until {@code interval}
+     * elapses, but no longer than {@code remaining}.
+     *
+     * @return the interval to wait before the next search: reset if the hierarchy changed, or
+     * doubled up to {@link #WAIT_FOR_SELECTOR_POLL} if it did not.
+     */
+    private long waitForSearchRetry(long generation, long interval, long remaining) {
+        if (getQueryController().waitForHierarchyChange(generation,
+                Math.min(interval, remaining))) {
+            return WAIT_FOR_SELECTOR_MIN_POLL;
+        }
+        return Math.min(interval * 2, WAIT_FOR_SELECTOR_POLL);
+    }
+
     /**
      * Drags this object to a destination UiObject.
      * The number of steps specified in your input parameter can influence the
@@ -951,16 +1164,22 @@ public class UiObject {
      */
     public boolean waitUntilGone(long timeout) {
         Tracer.trace(timeout);
+        QueryController queryController = getQueryController();
         long startMills = SystemClock.uptimeMillis();
-        long currentMills = 0;
-        while (currentMills <= timeout) {
-            if(findAccessibilityNodeInfo(0) == null)
+        long interval = WAIT_FOR_SELECTOR_MIN_POLL;
+        while (true) {
+            long generation = queryController.getHierarchyGeneration();
+            AccessibilityNodeInfo node = findAccessibilityNodeInfo(0);
+            if (node == null)
                 return true;
-            currentMills = SystemClock.uptimeMillis() - startMills;
-            if(timeout > 0)
-                SystemClock.sleep(WAIT_FOR_SELECTOR_POLL);
+            node.recycle();
+            long remaining = timeout - (SystemClock.uptimeMillis() - startMills);
+            if (remaining <= 0)
+                return false;
+            interval = waitForSearchRetry(generation, interval, remaining);
+            if (Thread.currentThread().isInterrupted())
+                return false;
         }
-        return false;
     }
 
     /**
@@ -25,6 +25,7 @@ import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.ViewConfiguration;
+import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 
 import java.util.ArrayList;
@@ -63,9 +64,11 @@ public class UiObject2 implements Searchable {
     private final long SCROLL_TIMEOUT = 1000;
     // Longer, since we may continue to scroll after the gesture completes.
     private final long FLING_TIMEOUT = 5000;
+    // Upper bound on the scroll actions performed by scrollToItem()
+    private static final int MAX_SCROLL_TO_ITEM_ACTIONS = 30;
 
     // Get wait functionality from a mixin
-    private WaitMixin<UiObject2> mWaitMixin = new WaitMixin<UiObject2>(this);
+    private WaitMixin<UiObject2> mWaitMixin;
 
 
     /** Package-private constructor. Used by {@link UiDevice#findObject(BySelector)}. */
@@ -73,6 +76,7 @@ public class UiObject2 implements Searchable {
         mDevice = device;
         mSelector = selector;
         mCachedNode = cachedNode;
+        mWaitMixin = new WaitMixin<UiObject2>(this, device);
         mGestures = Gestures.getInstance(device);
         mGestureController = GestureController.getInstance(device);
         mDisplayMetrics = mDevice.getAutomatorBridge().getContext().getResources()
@@ -483,6 +487,15 @@ public class UiObject2 implements Searchable {
             throw new IllegalArgumentException("Speed cannot be negative");
         }
 
+        // Scroll by performing the accessibility action once per page, if enabled and supported
+        if (percent > 0.0f && Configurator.getInstance().isAccessibilityScrollEnabled()) {
+            AccessibilityNodeInfo node = getAccessibilityNodeInfo();
+            int action = getScrollAction(direction);
+            if ((node.getActions() & action) != 0) {
+                return scrollWithAction(node, action, (int) Math.ceil(percent), direction);
+            }
+        }
+
         // To scroll, we swipe in the opposite direction
         final Direction swipeDirection = Direction.reverse(direction);
 
@@ -526,6 +539,15 @@ public class UiObject2 implements Searchable {
             throw new IllegalArgumentException("Speed is less than the minimum fling velocity");
         }
 
+        // A fling becomes a single scroll action, if enabled and supported
+        if (Configurator.getInstance().isAccessibilityScrollEnabled()) {
+            AccessibilityNodeInfo node = getAccessibilityNodeInfo();
+            int action = getScrollAction(direction);
+            if ((node.getActions() & action) != 0) {
+                return scrollWithAction(node, action, 1, direction);
+            }
+        }
+
         // To fling, we swipe in the opposite direction
         final Direction swipeDirection = Direction.reverse(direction);
 
@@ -537,6 +559,63 @@ public class UiObject2 implements Searchable {
                 Until.scrollFinished(direction), FLING_TIMEOUT, swipe);
     }
 
+    /** Returns the accessibility action which scrolls in the given direction. */
+    private static int getScrollAction(Direction direction) {
+        switch (direction) {
+            case UP:
+            case LEFT:
+                return AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD;
+            case DOWN:
+            case RIGHT:
+                return AccessibilityNodeInfo.ACTION_SCROLL_FORWARD;
+            default:
+                throw new IllegalArgumentException("Invalid Direction");
+        }
+    }
+
+    /**
+     * Performs the scroll {@code action} on {@code node} up to {@code count} times, one at a time
+     * and letting each scroll settle, and stops as soon as the object stops scrolling.
+     *
+     * @return Whether the object can still scroll in the given direction.
+     */
+    private boolean scrollWithAction(AccessibilityNodeInfo node, int action, int count,
+            Direction direction) {
+        InteractionController ic = mDevice.getAutomatorBridge().getInteractionController();
+        for (int x = 0; x < count; x++) {
+            AccessibilityEvent event = ic.performScrollActionForEvent(node, action);
+            if (event == null) {
+                // Nothing scrolled, so we were already at the end
+                return false;
+            }
+            boolean finished = Until.scrollFinished(direction).apply(event);
+            event.recycle();
+            if (finished) {
+                return false;
+            }
+        }
+        // The event does not always tell, but the node only offers the action if it can scroll
+        return node.refresh() && (node.getActions() & action) != 0;
+    }
+
+    /**
+     * Scrolls this object until the item at {@code index} in its adapter is visible.
+     * <p/>
+     * This object must be a scrollable container which reports the range of visible items when
+     * it scrolls, such as a list view. Rather than swiping, it performs accessibility scroll
+     * actions one at a time, letting each settle, until the reported range includes the item.
+     *
+     * @param index The position of the item in the adapter.
+     * @return Whether the item is now visible.
+     */
+    public boolean scrollToItem(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Index cannot be negative");
+        }
+        InteractionController ic = mDevice.getAutomatorBridge().getInteractionController();
+        return ic.scrollToItem(getAccessibilityNodeInfo(), index, MAX_SCROLL_TO_ITEM_ACTIONS);
+    }
+
     /**
      * Set the text content by sending individual key codes.
      * @hide
@@ -18,6 +18,7 @@ package android.support.test.uiautomator;
 
 import android.graphics.Rect;
 import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 
 /**
@@ -256,29 +257,129 @@ public class UiScrollable extends UiCollection {
      */
     public boolean scrollIntoView(UiSelector selector) throws UiObjectNotFoundException {
         Tracer.trace(selector);
+        AccessibilityNodeInfo container = findAccessibilityNodeInfo(WAIT_FOR_SELECTOR_TIMEOUT);
+        if (container == null) {
+            throw new UiObjectNotFoundException(getSelector().toString());
+        }
         // if we happen to be on top of the text we want then return here
-        UiSelector childSelector = getSelector().childSelector(selector);
-        if (exists(childSelector)) {
+        if (existsInContainer(container, selector)) {
             return (true);
-        } else {
-            // we will need to reset the search from the beginning to start search
-            scrollToBeginning(mMaxSearchSwipes);
-            if (exists(childSelector)) {
+        }
+        // we will need to reset the search from the beginning to start search, unless the
+        // container reports that it can scroll forward but not backward, i.e. that everything
+        // not yet seen is ahead
+        int actions = container.getActions();
+        if ((actions & AccessibilityNodeInfo.ACTION_SCROLL_FORWARD) == 0
+                || (actions & AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD) != 0) {
+            // Each swipe waits for its scrolling to settle, so the content is at rest here
+            scrollToBeginningAndSettle(container);
+            if (existsInContainer(container, selector)) {
                 return (true);
             }
-            for (int x = 0; x < mMaxSearchSwipes; x++) {
-                boolean scrolled = scrollForward();
-                if(exists(childSelector)) {
-                    return true;
-                }
-                if (!scrolled) {
-                    return false;
-                }
+        }
+
+        // Only the container's subtree is searched after each swipe, and only if the scroll
+        // event shows that different items came into view. scrollSwipeForEvent() returns once
+        // the scroll events have stopped, so the search sees the content at rest without a
+        // separate wait for idle.
+        Rect rect = new Rect();
+        container.getBoundsInScreen(rect);
+        int[] swipe = getForwardSwipe(rect);
+        int fromIndex = -1;
+        int toIndex = -1;
+        for (int x = 0; x < mMaxSearchSwipes; x++) {
+            AccessibilityEvent event = getInteractionController().scrollSwipeForEvent(
+                    swipe[0], swipe[1], swipe[2], swipe[3], SCROLL_STEPS);
+            if (event == null) {
+                // end of scroll since no new scroll events received
+                return existsInContainer(container, selector);
+            }
+            boolean scrolled = !InteractionController.isScrollEnd(event,
+                    swipe[0], swipe[1], swipe[2], swipe[3]);
+            boolean moved = event.getFromIndex() == -1 || event.getFromIndex() != fromIndex
+                    || event.getToIndex() != toIndex;
+            fromIndex = event.getFromIndex();
+            toIndex = event.getToIndex();
+            event.recycle();
+
+            if (moved && existsInContainer(container, selector)) {
+                return true;
+            }
+            if (!scrolled) {
+                return false;
             }
         }
         return false;
     }
 
+    /**
+     * Swipes backward over the {@code container} until it reports its beginning, as
+     * {@link #scrollToBeginning(int)} does, but lets the scrolling caused by each swipe settle
+     * before the next one, so that the content is at rest once this returns.
+     */
+    private void scrollToBeginningAndSettle(AccessibilityNodeInfo container) {
+        Rect rect = new Rect();
+        container.getBoundsInScreen(rect);
+        int[] swipe = getBackwardSwipe(rect);
+        for (int x = 0; x < mMaxSearchSwipes; x++) {
+            AccessibilityEvent event = getInteractionController().scrollSwipeForEvent(
+                    swipe[0], swipe[1], swipe[2], swipe[3], SCROLL_STEPS);
+            if (event == null) {
+                break;
+            }
+            boolean foundEnd = InteractionController.isScrollEnd(event,
+                    swipe[0], swipe[1], swipe[2], swipe[3]);
+            event.recycle();
+            if (foundEnd) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Searches the current content of the {@code container} for a child matching the
+     * {@code selector}. Registered watchers are run if none is found, as for any other search
+     * which fails, so that a dialog covering the container does not hide the child for good.
+     */
+    private boolean existsInContainer(AccessibilityNodeInfo container, UiSelector selector)
+            throws UiObjectNotFoundException {
+        // The cached node does not see the children that scrolled into view until refreshed
+        if (!container.refresh()) {
+            throw new UiObjectNotFoundException(getSelector().toString());
+        }
+        AccessibilityNodeInfo node = findNodeInContainer(selector, container);
+        if (node != null) {
+            node.recycle();
+            return true;
+        }
+        // does nothing if we're reentering another runWatchers()
+        getDevice().runWatchers();
+        return false;
+    }
+
+    /**
+     * Scrolls until the item at {@code index} in the adapter of this scrollable layout element is
+     * in view, for example to reach a given row of a list view.
+     * <p/>
+     * Unlike {@link #scrollIntoView(UiSelector)}, this does not swipe and search after each swipe.
+     * It performs the accessibility scroll actions of the layout element, one page at a time,
+     * and checks the range of visible items it reports once each scroll has settled. Nothing is
+     * scrolled if the item is already in view. The layout element must report item indices in its
+     * scroll events, as adapter views do; for other layout elements this returns false.
+     *
+     * @param index the position of the item in the adapter
+     * @return true if the item is now in view; else, false
+     * @throws IllegalArgumentException if {@code index} is negative
+     */
+    public boolean scrollToItem(int index) throws UiObjectNotFoundException {
+        Tracer.trace(index);
+        AccessibilityNodeInfo container = findAccessibilityNodeInfo(WAIT_FOR_SELECTOR_TIMEOUT);
+        if (container == null) {
+            throw new UiObjectNotFoundException(getSelector().toString());
+        }
+        return getInteractionController().scrollToItem(container, index, mMaxSearchSwipes);
+    }
+
     /**
      * Scrolls forward until the UiObject is fully visible in the scrollable container.
      * Use this method to make sure that the child item's edges are not offscreen.
@@ -418,7 +519,16 @@ public class UiScrollable extends UiCollection {
         }
         Rect rect = new Rect();
         node.getBoundsInScreen(rect);
+        int[] swipe = getForwardSwipe(rect);
+        return getInteractionController().scrollSwipe(swipe[0], swipe[1], swipe[2], swipe[3],
+                steps);
+    }
 
+    /**
+     * Returns the swipe which scrolls forward in a container with the given bounds, as
+     * {downX, downY, upX, upY}.
+     */
+    private int[] getForwardSwipe(Rect rect) {
         int downX = 0;
         int downY = 0;
         int upX = 0;
@@ -442,7 +552,7 @@ public class UiScrollable extends UiCollection {
             upX = rect.left + swipeAreaAdjust;
             upY = rect.centerY();
         }
-        return getInteractionController().scrollSwipe(downX, downY, upX, upY, steps);
+        return new int[] { downX, downY, upX, upY };
     }
 
     /**
@@ -497,7 +607,16 @@ public class UiScrollable extends UiCollection {
         }
         Rect rect = new Rect();
         node.getBoundsInScreen(rect);
+        int[] swipe = getBackwardSwipe(rect);
+        return getInteractionController().scrollSwipe(swipe[0], swipe[1], swipe[2], swipe[3],
+                steps);
+    }
 
+    /**
+     * Returns the swipe which scrolls backward in a container with the given bounds, as
+     * {downX, downY, upX, upY}.
+     */
+    private int[] getBackwardSwipe(Rect rect) {
         int downX = 0;
         int downY = 0;
         int upX = 0;
@@ -523,7 +642,7 @@ public class UiScrollable extends UiCollection {
             upX = rect.right - swipeAreaAdjust;
             upY = rect.centerY();
         }
-        return getInteractionController().scrollSwipe(downX, downY, upX, upY, steps);
+        return new int[] { downX, downY, upX, upY };
     }
 
     /**
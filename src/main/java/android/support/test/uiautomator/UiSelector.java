@@ -19,6 +19,7 @@ package android.support.test.uiautomator;
 import android.util.SparseArray;
 import android.view.accessibility.AccessibilityNodeInfo;
 
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 /**
@@ -64,6 +65,9 @@ public class UiSelector {
 
     private SparseArray<Object> mSelectorAttributes = new SparseArray<Object>();
 
+    // Compiled on first use. Selectors are not modified once built, only copied.
+    private UiSelectorPlan mPlan;
+
     /**
      * @since API Level 16
      */
@@ -852,6 +856,22 @@ public class UiSelector {
         return matchOrUpdateInstance();
     }
 
+    /**
+     * Checks whether a node found earlier for this selector still has the attributes required by
+     * the deepest sub selector, which is the one the found node matched. The index and instance
+     * criteria are ignored, since they depend on the position of the node in the hierarchy
+     * rather than on the node itself. This selector is not modified.
+     * @param node
+     * @return true if the node still matches
+     */
+    boolean isAttributeMatchFor(AccessibilityNodeInfo node) {
+        UiSelector selector = new UiSelector(getLastSubSelector());
+        selector.mSelectorAttributes.delete(UiSelector.SELECTOR_INDEX);
+        selector.mSelectorAttributes.delete(UiSelector.SELECTOR_INSTANCE);
+        selector.mSelectorAttributes.delete(UiSelector.SELECTOR_COUNT);
+        return selector.isMatchFor(node, 0);
+    }
+
     private boolean matchOrUpdateInstance() {
         int currentSelectorCounter = 0;
         int currentSelectorInstance = 0;
@@ -878,6 +898,139 @@ public class UiSelector {
         return false;
     }
 
+    /**
+     * Returns the compiled {@link UiSelectorPlan} for this selector and its sub selectors. The
+     * plan is cached, since builder methods always return a modified copy of the selector.
+     */
+    UiSelectorPlan compile() {
+        UiSelectorPlan plan = mPlan;
+        if (plan == null) {
+            plan = new UiSelectorPlan(compileStep());
+            mPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Translates the criteria of this selector into a {@link UiSelectorPlan.Step}, and those of
+     * its sub selectors into the steps it links to.
+     */
+    private UiSelectorPlan.Step compileStep() {
+        int size = mSelectorAttributes.size();
+        int flagMask = 0;
+        int flagValues = 0;
+        int[] stringAttributes = new int[size];
+        StringCriterion[] stringCriteria = new StringCriterion[size];
+        int stringCount = 0;
+        for (int x = 0; x < size; x++) {
+            int criterion = mSelectorAttributes.keyAt(x);
+            int flag = getFlag(criterion);
+            if (flag != 0) {
+                flagMask |= flag;
+                if (getBoolean(criterion)) {
+                    flagValues |= flag;
+                }
+                continue;
+            }
+            int attribute = getStringAttribute(criterion);
+            if (attribute != -1) {
+                stringAttributes[stringCount] = attribute;
+                stringCriteria[stringCount++] = getStringCriterion(criterion).strict();
+            }
+        }
+        SelectorPlan criteria = SelectorPlan.forCriteria(flagMask, flagValues,
+                Arrays.copyOf(stringAttributes, stringCount),
+                Arrays.copyOf(stringCriteria, stringCount));
+
+        int index = mSelectorAttributes.indexOfKey(SELECTOR_INDEX) >= 0 ?
+                getInt(SELECTOR_INDEX) : -1;
+        return new UiSelectorPlan.Step(criteria, index, getInstance(),
+                compileStep(SELECTOR_CHILD), compileStep(SELECTOR_PARENT),
+                compileStep(SELECTOR_CONTAINER), compileStep(SELECTOR_PATTERN));
+    }
+
+    /** Returns the compiled sub selector for {@code criterion}, or null if there is none. */
+    private UiSelectorPlan.Step compileStep(int criterion) {
+        UiSelector selector = (UiSelector) mSelectorAttributes.get(criterion, null);
+        return selector != null ? selector.compileStep() : null;
+    }
+
+    /** Returns the {@link UiNodeAttributes} flag tested by {@code criterion}, or 0 if none. */
+    private static int getFlag(int criterion) {
+        switch (criterion) {
+            case SELECTOR_CHECKED:
+                return UiNodeAttributes.FLAG_CHECKED;
+            case SELECTOR_CHECKABLE:
+                return UiNodeAttributes.FLAG_CHECKABLE;
+            case SELECTOR_CLICKABLE:
+                return UiNodeAttributes.FLAG_CLICKABLE;
+            case SELECTOR_ENABLED:
+                return UiNodeAttributes.FLAG_ENABLED;
+            case SELECTOR_FOCUSED:
+                return UiNodeAttributes.FLAG_FOCUSED;
+            case SELECTOR_FOCUSABLE:
+                return UiNodeAttributes.FLAG_FOCUSABLE;
+            case SELECTOR_LONG_CLICKABLE:
+                return UiNodeAttributes.FLAG_LONG_CLICKABLE;
+            case SELECTOR_SCROLLABLE:
+                return UiNodeAttributes.FLAG_SCROLLABLE;
+            case SELECTOR_SELECTED:
+                return UiNodeAttributes.FLAG_SELECTED;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the {@link SelectorPlan} attribute tested by {@code criterion}, or -1 if it is not
+     * a string criterion.
+     */
+    private static int getStringAttribute(int criterion) {
+        switch (criterion) {
+            case SELECTOR_RESOURCE_ID:
+            case SELECTOR_RESOURCE_ID_REGEX:
+                return SelectorPlan.ATTR_RES;
+            case SELECTOR_CLASS:
+            case SELECTOR_CLASS_REGEX:
+                return SelectorPlan.ATTR_CLASS;
+            case SELECTOR_PACKAGE_NAME:
+            case SELECTOR_PACKAGE_NAME_REGEX:
+                return SelectorPlan.ATTR_PKG;
+            case SELECTOR_TEXT:
+            case SELECTOR_TEXT_REGEX:
+            case SELECTOR_START_TEXT:
+            case SELECTOR_CONTAINS_TEXT:
+                return SelectorPlan.ATTR_TEXT;
+            case SELECTOR_DESCRIPTION:
+            case SELECTOR_DESCRIPTION_REGEX:
+            case SELECTOR_START_DESCRIPTION:
+            case SELECTOR_CONTAINS_DESCRIPTION:
+                return SelectorPlan.ATTR_DESC;
+            default:
+                return -1;
+        }
+    }
+
+    /** Returns the {@link StringCriterion} equivalent to the string {@code criterion}. */
+    private StringCriterion getStringCriterion(int criterion) {
+        switch (criterion) {
+            case SELECTOR_RESOURCE_ID_REGEX:
+            case SELECTOR_CLASS_REGEX:
+            case SELECTOR_PACKAGE_NAME_REGEX:
+            case SELECTOR_TEXT_REGEX:
+            case SELECTOR_DESCRIPTION_REGEX:
+                return StringCriterion.matches(getPattern(criterion));
+            case SELECTOR_START_TEXT:
+            case SELECTOR_START_DESCRIPTION:
+                return StringCriterion.startsWithIgnoreCase(getString(criterion));
+            case SELECTOR_CONTAINS_TEXT:
+            case SELECTOR_CONTAINS_DESCRIPTION:
+                return StringCriterion.containsIgnoreCase(getString(criterion));
+            default:
+                return StringCriterion.equalTo(getString(criterion));
+        }
+    }
+
     /**
      * Leaf selector indicates no more child or parent selectors
      * are declared in the this selector.
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+/**
+ * An immutable, compiled form of a {@link UiSelector}, created by {@link UiSelector#compile()}.
+ * <p/>
+ * The attribute criteria of each level of the selector are compiled into a single selector
+ * {@link SelectorPlan}, with strict {@link StringCriterion}s since a {@link UiSelector} never
+ * matches a missing attribute, so they are evaluated by the same code as {@link BySelector}
+ * criteria. The plan is searched over {@link UiNode}s. On the device these are the nodes of a
+ * {@link HierarchySnapshot}, so {@link UiSelector} queries can share the snapshot, and its cache,
+ * with {@link BySelector} queries.
+ * <p/>
+ * The traversal itself is not shared with {@link UiNodeMatcher}. A {@link BySelector} cannot
+ * express a {@link UiSelector}: child selectors of a {@link BySelector} constrain the descendants
+ * of the node that is returned, while {@link UiSelector#childSelector(UiSelector)} and
+ * {@link UiSelector#fromParent(UiSelector)} return the descendant or sibling itself, and
+ * instances are counted in the order in which {@link QueryController} visits nodes. The search
+ * therefore follows {@link QueryController} step by step, including how instances are counted
+ * within each child, parent, container and pattern selector, so both return the same node for
+ * the same hierarchy.
+ */
+final class UiSelectorPlan {
+
+    private final Step mRoot;
+
+    UiSelectorPlan(Step root) {
+        mRoot = root;
+    }
+
+    /**
+     * Returns the node that {@link QueryController#findAccessibilityNodeInfo(UiSelector)} would
+     * find for this selector in the hierarchy under {@code root}, or null if there is none.
+     */
+    UiNode findMatch(UiNode root) {
+        return translateCompoundSelector(new Cursor(mRoot), root, false, new Search());
+    }
+
+    /**
+     * Returns the node that {@link QueryController#findAccessibilityNodeInfo(UiSelector,
+     * android.view.accessibility.AccessibilityNodeInfo)} would find for this selector in the
+     * subtree under {@code container}, without matching the container itself, or null if there
+     * is none.
+     */
+    UiNode findMatchInContainer(UiNode container) {
+        // Like QueryController, a single copy of the selector, and its instance count, is used
+        // for the subtrees of all children
+        Cursor selector = new Cursor(mRoot);
+        Search search = new Search();
+        int childCount = container.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            UiNode childNode = container.getChild(i);
+            UiNode retNode;
+            if (mRoot.mContainer != null || mRoot.mPattern != null) {
+                retNode = translateCompoundSelector(selector, childNode, false, search);
+            } else {
+                retNode = findNodeRegular(selector, childNode, childNode.getIndex());
+            }
+            if (retNode != null) {
+                return retNode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of pattern matches that {@link QueryController#getPatternCount} would
+     * count for this selector in the hierarchy under {@code root}.
+     */
+    int getPatternCount(UiNode root) {
+        Search search = new Search();
+        translateCompoundSelector(new Cursor(mRoot), root, true, search);
+        return search.mPatternCounter;
+    }
+
+    private UiNode translateCompoundSelector(Cursor selector, UiNode fromNode,
+            boolean isCounting, Search search) {
+
+        Step step = selector.mStep;
+        if (step.mContainer != null) {
+            if (step.mContainer.mContainer != null) {
+                fromNode = translateCompoundSelector(new Cursor(step.mContainer), fromNode,
+                        false, search);
+                search.initializeNewSearch();
+            } else {
+                fromNode = findNodeRegular(new Cursor(step.mContainer), fromNode, 0);
+            }
+        } else {
+            fromNode = findNodeRegular(selector, fromNode, 0);
+        }
+        if (fromNode == null) {
+            return null;
+        }
+
+        if (step.mPattern != null) {
+            fromNode = translatePatternSelector(step.mPattern, fromNode, isCounting, search);
+            if (isCounting || fromNode == null) {
+                return null;
+            }
+        }
+
+        // Child and parent selectors added after a container and pattern selector
+        if (step.mContainer != null || step.mPattern != null) {
+            if (!step.isLeaf()) {
+                fromNode = findNodeRegular(selector, fromNode, 0);
+            }
+        }
+        return fromNode;
+    }
+
+    private UiNode findNodeRegular(Cursor selector, UiNode fromNode, int index) {
+
+        if (selector.isMatchFor(fromNode, index)) {
+            Step step = selector.mStep;
+            if (step.isLeaf()) {
+                return fromNode;
+            }
+            if (step.mChild != null) {
+                selector = new Cursor(step.mChild);
+            } else {
+                // Start at this level from the parent of the node just matched
+                selector = new Cursor(step.mParent);
+                fromNode = fromNode.getParent();
+                if (fromNode == null) {
+                    return null;
+                }
+            }
+        }
+
+        int childCount = fromNode.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            UiNode childNode = fromNode.getChild(i);
+            UiNode retNode = findNodeRegular(selector, childNode, childNode.getIndex());
+            if (retNode != null) {
+                return retNode;
+            }
+        }
+        return null;
+    }
+
+    private UiNode translatePatternSelector(Step wrapper,
+            UiNode fromNode, boolean isCounting, Search search) {
+
+        if (wrapper.mPattern == null) {
+            return null;
+        }
+        // Counting never stops at an instance, so it walks to the end of the tree
+        search.mPatternIndexer = isCounting ? -1 : wrapper.mInstance;
+        Cursor pattern = new Cursor(wrapper.mPattern);
+        return findNodePattern(pattern, fromNode, 0, pattern, search);
+    }
+
+    private UiNode findNodePattern(Cursor selector,
+            UiNode fromNode, int index, Cursor originalPattern, Search search) {
+
+        if (selector.isMatchFor(fromNode, index)) {
+            Step step = selector.mStep;
+            if (step.isLeaf()) {
+                if (search.mPatternIndexer == 0) {
+                    return fromNode;
+                }
+                search.mPatternCounter++;
+                search.mPatternIndexer--;
+                // Look for the next instance of the pattern from here
+                selector = originalPattern;
+            } else if (step.mChild != null) {
+                selector = new Cursor(step.mChild);
+            } else {
+                selector = new Cursor(step.mParent);
+                fromNode = fromNode.getParent();
+                if (fromNode == null) {
+                    return null;
+                }
+            }
+        }
+
+        int childCount = fromNode.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            UiNode childNode = fromNode.getChild(i);
+            UiNode retNode = findNodePattern(selector, childNode,
+                    childNode.getIndex(), originalPattern, search);
+            if (retNode != null) {
+                return retNode;
+            }
+        }
+        return null;
+    }
+
+    /** The state of a single search. */
+    private static final class Search {
+        int mPatternCounter = 0;
+        int mPatternIndexer = 0;
+
+        /** Resets the pattern state before searching within a nested container. */
+        void initializeNewSearch() {
+            mPatternCounter = 0;
+            mPatternIndexer = 0;
+        }
+    }
+
+    /**
+     * A level of the selector in use by a search, with the number of matches it has skipped so
+     * far. {@link QueryController} works on copies of the selector, so a fresh count starts
+     * wherever it copies a child, parent, container or pattern selector.
+     */
+    private static final class Cursor {
+        final Step mStep;
+        private final UiNodeAttributes mAttributes = new UiNodeAttributes();
+        private int mCount = 0;
+
+        Cursor(Step step) {
+            mStep = step;
+        }
+
+        /**
+         * Returns true if the node matches the criteria of this level and enough earlier matches
+         * have been skipped to reach its instance.
+         */
+        boolean isMatchFor(UiNode node, int index) {
+            mAttributes.reset(node);
+            boolean accepted = mStep.accept(mAttributes, index);
+            mAttributes.reset(null);
+            if (!accepted) {
+                return false;
+            }
+            if (mStep.mInstance == mCount) {
+                return true;
+            }
+            if (mStep.mInstance > mCount) {
+                mCount++;
+            }
+            return false;
+        }
+    }
+
+    /** The compiled criteria of one level of a {@link UiSelector}. */
+    static final class Step {
+        final Step mChild;
+        final Step mParent;
+        final Step mContainer;
+        final Step mPattern;
+        final int mInstance;
+
+        private final int mIndex;
+        private final SelectorPlan mCriteria;
+
+        /**
+         * @param criteria The attribute criteria of this level, as a single selector plan.
+         * @param index The required index of the node underneath its parent, or -1 for any.
+         * @param instance The number of earlier matches to skip.
+         */
+        Step(SelectorPlan criteria, int index, int instance, Step child, Step parent,
+                Step container, Step pattern) {
+            mCriteria = criteria;
+            mIndex = index;
+            mInstance = instance;
+            mChild = child;
+            mParent = parent;
+            mContainer = container;
+            mPattern = pattern;
+        }
+
+        boolean isLeaf() {
+            return mChild == null && mParent == null;
+        }
+
+        /** Returns true if the node matches all criteria of this level except its instance. */
+        boolean accept(UiNodeAttributes node, int index) {
+            if (mIndex != -1 && index != mIndex) {
+                return false;
+            }
+            return mCriteria.accept(node, SelectorPlan.ROOT, 0);
+        }
+    }
+}
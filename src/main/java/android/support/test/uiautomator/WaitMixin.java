@@ -20,14 +20,18 @@ import android.os.SystemClock;
 
 /**
  * Mixin which provides functionality to wait for conditions that depend on a given object.
+ * Conditions are re-evaluated as soon as an accessibility event indicates that the hierarchy may
+ * have changed, or once per poll interval if no such event arrives.
  */
 class WaitMixin<T> {
 
     private static final long DEFAULT_POLL_INTERVAL = 1000;
     private T mObject;
+    private UiDevice mDevice;
 
-    public WaitMixin(T instance) {
+    public WaitMixin(T instance, UiDevice device) {
         mObject = instance;
+        mDevice = device;
     }
 
     public <R> R wait(Condition<? super T, R> condition, long timeout) {
@@ -35,8 +39,12 @@ class WaitMixin<T> {
     }
 
     public <R> R wait(Condition<? super T, R> condition, long timeout, long interval) {
+        QueryController queryController = mDevice.getAutomatorBridge().getQueryController();
         long startTime = SystemClock.uptimeMillis();
 
+        // Read the generation before evaluating, so that a change which happens while the
+        // condition is being evaluated triggers an immediate re-check.
+        long generation = queryController.getHierarchyGeneration();
         R result = condition.apply(mObject);
         for (long elapsedTime = 0; result == null || result.equals(false);
                 elapsedTime = SystemClock.uptimeMillis() - startTime) {
@@ -45,7 +53,13 @@ class WaitMixin<T> {
                 break;
             }
 
-            SystemClock.sleep(interval);
+            queryController.waitForHierarchyChange(generation,
+                    Math.min(interval, timeout - elapsedTime));
+            if (Thread.currentThread().isInterrupted()) {
+                // Give up, and leave the interrupt for the caller to handle
+                break;
+            }
+            generation = queryController.getHierarchyGeneration();
             result = condition.apply(mObject);
         }
         return result;
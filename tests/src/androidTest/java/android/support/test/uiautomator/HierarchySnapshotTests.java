@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Checks when {@link UiDevice#getHierarchySnapshot()} shares the snapshot it captured last, and
+ * when an accessibility event makes it capture a new one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HierarchySnapshotTests {
+
+    private static final String TEST_APP = "android.support.test.uiautomator.testapp";
+
+    private UiDevice mDevice;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+    }
+
+    public void launchTestActivity(String activity) {
+        // Launch the test app
+        Context context = InstrumentationRegistry.getContext();
+        Intent intent = new Intent()
+                .setClassName(TEST_APP, String.format("%s.%s", TEST_APP, activity))
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        context.startActivity(intent);
+
+        // Wait for activity to appear
+        mDevice.wait(Until.hasObject(By.pkg(TEST_APP)), 10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDevice.pressHome();
+
+        // Wait for the activity to disappear
+        mDevice.wait(Until.gone(By.pkg(TEST_APP)), 5000);
+    }
+
+    @Test
+    public void testSharedWhileUnchanged() {
+        launchTestActivity("MainActivity");
+
+        HierarchySnapshot snapshot = mDevice.getHierarchySnapshot();
+        Assert.assertSame(snapshot, mDevice.getHierarchySnapshot());
+        Assert.assertEquals(1, snapshot.getNodesByText("Sample text").size());
+    }
+
+    @Test
+    public void testInvalidatedByHierarchyChange() {
+        launchTestActivity("UiObject2TestClickActivity");
+
+        HierarchySnapshot before = mDevice.getHierarchySnapshot();
+        Assert.assertEquals(1, before.getNodesByText("Click Me!").size());
+
+        // Clicking sets the button's text, which is reported by an accessibility event
+        mDevice.findObject(By.res(TEST_APP, "button")).click();
+        Assert.assertTrue(mDevice.wait(Until.hasObject(By.text("I've been clicked!")), 5000));
+
+        HierarchySnapshot after = mDevice.getHierarchySnapshot();
+        Assert.assertNotSame(before, after);
+        Assert.assertTrue(after.getGeneration() != before.getGeneration());
+        Assert.assertTrue(after.getNodesByText("Click Me!").isEmpty());
+        Assert.assertEquals(1, after.getNodesByText("I've been clicked!").size());
+
+        // The replaced snapshot is not recycled, so a caller still holding it can read it
+        List<HierarchySnapshot.Node> old = before.getNodesByText("Click Me!");
+        Assert.assertEquals(1, old.size());
+        Assert.assertEquals("Click Me!", old.get(0).getInfo().getText().toString());
+    }
+
+    @Test
+    public void testInvalidateHierarchy() {
+        launchTestActivity("MainActivity");
+
+        HierarchySnapshot snapshot = mDevice.getHierarchySnapshot();
+        mDevice.getAutomatorBridge().getQueryController().invalidateHierarchy();
+        Assert.assertNotSame(snapshot, mDevice.getHierarchySnapshot());
+    }
+}
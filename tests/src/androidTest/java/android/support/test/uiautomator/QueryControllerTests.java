@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the legacy {@link UiSelector} searches of {@link QueryController} recycle every
+ * node they obtain, other than the one they return.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryControllerTests {
+
+    private static final String TEST_APP = "android.support.test.uiautomator.testapp";
+
+    private UiDevice mDevice;
+    private QueryController mQueryController;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        mQueryController = mDevice.getAutomatorBridge().getQueryController();
+        launchTestActivity("MainActivity");
+    }
+
+    public void launchTestActivity(String activity) {
+        // Launch the test app
+        Context context = InstrumentationRegistry.getContext();
+        Intent intent = new Intent()
+                .setClassName(TEST_APP, String.format("%s.%s", TEST_APP, activity))
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        context.startActivity(intent);
+
+        // Wait for activity to appear
+        mDevice.wait(Until.hasObject(By.pkg(TEST_APP)), 10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDevice.pressHome();
+
+        // Wait for the activity to disappear
+        mDevice.wait(Until.gone(By.pkg(TEST_APP)), 5000);
+    }
+
+    @Test
+    public void testRegularSearchRecyclesNodes() {
+        assertFound(new UiSelector().text("Third Level"));
+        assertFound(new UiSelector().className(TextView.class).instance(3));
+        assertFound(new UiSelector().resourceIdMatches(".*nested_elements")
+                .childSelector(new UiSelector().text("Second Level")));
+        assertNotFound(new UiSelector().text("No such text"));
+        assertNotFound(new UiSelector().className(TextView.class).instance(100));
+    }
+
+    @Test
+    public void testPatternSearchRecyclesNodes() {
+        UiSelector list = new UiSelector().className(ListView.class);
+        UiSelector item = new UiSelector().className(TextView.class);
+
+        Assert.assertEquals(3, mQueryController.getPatternCount(
+                UiSelector.patternBuilder(list, UiSelector.patternBuilder(item))));
+        Assert.assertEquals(0, mQueryController.getLastSearchLeakedNodes());
+
+        assertFound(UiSelector.patternBuilder(list,
+                UiSelector.patternBuilder(item).instance(1)));
+        assertNotFound(UiSelector.patternBuilder(list,
+                UiSelector.patternBuilder(item).instance(10)));
+    }
+
+    @Test
+    public void testFromParentSearchRecyclesNodes() {
+        // Siblings of the matched node, found through its parent
+        assertFound(new UiSelector().text("Second Level")
+                .fromParent(new UiSelector().className(LinearLayout.class)));
+        assertFound(new UiSelector().text("Third Level")
+                .fromParent(new UiSelector().text("Third Level")));
+        assertNotFound(new UiSelector().text("Second Level")
+                .fromParent(new UiSelector().text("First Level")));
+    }
+
+    @Test
+    public void testContainerSearchRecyclesNodes() {
+        AccessibilityNodeInfo container = mQueryController.findAccessibilityNodeInfo(
+                new UiSelector().className(ListView.class));
+        Assert.assertNotNull(container);
+        try {
+            AccessibilityNodeInfo node = mQueryController.findAccessibilityNodeInfo(
+                    new UiSelector().text("Item2"), container);
+            Assert.assertNotNull(node);
+            Assert.assertEquals(0, mQueryController.getLastSearchLeakedNodes());
+            node.recycle();
+
+            Assert.assertNull(mQueryController.findAccessibilityNodeInfo(
+                    new UiSelector().text("Third Level"), container));
+            Assert.assertEquals(0, mQueryController.getLastSearchLeakedNodes());
+        } finally {
+            container.recycle();
+        }
+    }
+
+    @Test
+    public void testConcurrentSearchesKeepTheirOwnAccounting() throws Exception {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int thread = i;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        // Nothing searched on this thread yet
+                        Assert.assertEquals(0, mQueryController.getLastSearchLeakedNodes());
+                        for (int j = 0; j < 10; j++) {
+                            if ((thread + j) % 2 == 0) {
+                                assertFound(new UiSelector().className(TextView.class)
+                                        .instance(j % 4));
+                            } else {
+                                assertNotFound(new UiSelector().text("No such text " + j));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    private void assertFound(UiSelector selector) {
+        AccessibilityNodeInfo node = mQueryController.findAccessibilityNodeInfo(selector);
+        Assert.assertNotNull(selector.toString(), node);
+        Assert.assertEquals(selector.toString(), 0, mQueryController.getLastSearchLeakedNodes());
+        node.recycle();
+    }
+
+    private void assertNotFound(UiSelector selector) {
+        AccessibilityNodeInfo node = mQueryController.findAccessibilityNodeInfo(selector);
+        Assert.assertNull(selector.toString(), node);
+        Assert.assertEquals(selector.toString(), 0, mQueryController.getLastSearchLeakedNodes());
+    }
+}
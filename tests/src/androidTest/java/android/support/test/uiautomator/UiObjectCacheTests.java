@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks when a {@link UiObject} reuses the node it last found, and when it searches again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UiObjectCacheTests {
+
+    private static final String TEST_APP = "android.support.test.uiautomator.testapp";
+
+    private UiDevice mDevice;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+    }
+
+    public void launchTestActivity(String activity) {
+        // Launch the test app
+        Context context = InstrumentationRegistry.getContext();
+        Intent intent = new Intent()
+                .setClassName(TEST_APP, String.format("%s.%s", TEST_APP, activity))
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        context.startActivity(intent);
+
+        // Wait for activity to appear
+        mDevice.wait(Until.hasObject(By.pkg(TEST_APP)), 10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDevice.pressHome();
+
+        // Wait for the activity to disappear
+        mDevice.wait(Until.gone(By.pkg(TEST_APP)), 5000);
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        launchTestActivity("MainActivity");
+
+        UiObject object = mDevice.findObject(new UiSelector().text("Sample text"));
+        Assert.assertFalse(object.hasCachedNode());
+        Assert.assertTrue(object.exists());
+        Assert.assertTrue(object.hasCachedNode());
+
+        AccessibilityNodeInfo node = object.getCachedNode();
+        Assert.assertNotNull(node);
+        try {
+            Assert.assertEquals("Sample text", node.getText().toString());
+        } finally {
+            node.recycle();
+        }
+        // Recycling the copy leaves the cached node usable
+        Assert.assertEquals("Sample text", object.getText());
+        Assert.assertTrue(object.hasCachedNode());
+    }
+
+    @Test
+    public void testInvalidatedByAttributeChange() throws Exception {
+        launchTestActivity("UiObject2TestClickActivity");
+
+        UiObject button = mDevice.findObject(new UiSelector().text("Click Me!"));
+        Assert.assertTrue(button.exists());
+        Assert.assertTrue(button.hasCachedNode());
+
+        // Clicking sets the button's text, so the cached node no longer matches the selector
+        mDevice.findObject(By.res(TEST_APP, "button")).click();
+        mDevice.wait(Until.hasObject(By.text("I've been clicked!")), 5000);
+
+        Assert.assertNull(button.getCachedNode());
+        Assert.assertFalse(button.hasCachedNode());
+        Assert.assertFalse(button.exists());
+    }
+
+    @Test
+    public void testInvalidatedByOutOfBandLaunch() throws Exception {
+        launchTestActivity("MainActivity");
+
+        UiObject object = mDevice.findObject(new UiSelector().packageName(TEST_APP).instance(0));
+        Assert.assertTrue(object.exists());
+        Assert.assertTrue(object.hasCachedNode());
+
+        // No waiting for idle in between: the new window must be noticed by the cache itself
+        Context context = InstrumentationRegistry.getContext();
+        Intent intent = new Intent()
+                .setClassName(TEST_APP, TEST_APP + ".BySelectorTestHasChildActivity")
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        context.startActivity(intent);
+        mDevice.wait(Until.hasObject(By.res(TEST_APP, "toplevel1")), 10000);
+
+        Assert.assertNull(object.getCachedNode());
+        Assert.assertFalse(object.hasCachedNode());
+    }
+
+    @Test
+    public void testContainerAndPatternNotCached() throws Exception {
+        launchTestActivity("MainActivity");
+
+        UiCollection list = new UiCollection(new UiSelector().className(ListView.class));
+        UiObject item = list.getChildByInstance(new UiSelector().className(TextView.class), 1);
+        Assert.assertTrue(item.exists());
+        Assert.assertFalse(item.hasCachedNode());
+
+        UiObject inContainer = mDevice.findObject(new UiSelector().className(ListView.class)
+                .childSelector(new UiSelector().text("Item2")));
+        Assert.assertTrue(inContainer.exists());
+        Assert.assertTrue(inContainer.hasCachedNode());
+
+        UiObject pattern = mDevice.findObject(UiSelector.patternBuilder(
+                new UiSelector().className(ListView.class),
+                UiSelector.patternBuilder(new UiSelector().text("Item2"))));
+        Assert.assertTrue(pattern.exists());
+        Assert.assertFalse(pattern.hasCachedNode());
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        launchTestActivity("MainActivity");
+
+        final UiObject object = mDevice.findObject(new UiSelector().text("Sample text"));
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; j++) {
+                            Assert.assertEquals("Sample text", object.getText());
+                        }
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that a compiled {@link UiSelectorPlan}, searched over the {@link HierarchySnapshot},
+ * finds the same nodes and counts the same pattern matches as {@link QueryController} does in the
+ * live hierarchy.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UiSelectorPlanTests {
+
+    private static final String TEST_APP = "android.support.test.uiautomator.testapp";
+
+    private UiDevice mDevice;
+    private QueryController mQueryController;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        mQueryController = mDevice.getAutomatorBridge().getQueryController();
+    }
+
+    public void launchTestActivity(String activity) {
+        // Launch the test app
+        Context context = InstrumentationRegistry.getContext();
+        Intent intent = new Intent()
+                .setClassName(TEST_APP, String.format("%s.%s", TEST_APP, activity))
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        context.startActivity(intent);
+
+        // Wait for activity to appear
+        mDevice.wait(Until.hasObject(By.pkg(TEST_APP)), 10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDevice.pressHome();
+
+        // Wait for the activity to disappear
+        mDevice.wait(Until.gone(By.pkg(TEST_APP)), 5000);
+    }
+
+    @Test
+    public void testAttributeCriteria() {
+        launchTestActivity("MainActivity");
+
+        assertSameMatch(new UiSelector().text("Sample text"));
+        assertSameMatch(new UiSelector().textContains("LEVEL"));
+        assertSameMatch(new UiSelector().textStartsWith("second"));
+        assertSameMatch(new UiSelector().textMatches("Item[0-9]"));
+        assertSameMatch(new UiSelector().descriptionContains("ACCESSIBLE"));
+        assertSameMatch(new UiSelector().descriptionStartsWith("i'm"));
+        assertSameMatch(new UiSelector().resourceIdMatches(".*example_id"));
+        assertSameMatch(new UiSelector().className(Button.class).clickable(true));
+        assertSameMatch(new UiSelector().className(TextView.class).clickable(true));
+        assertSameMatch(new UiSelector().packageName(TEST_APP).checkable(false).instance(4));
+        assertSameMatch(new UiSelector().text("No such text"));
+    }
+
+    @Test
+    public void testMissingAttributes() {
+        launchTestActivity("MainActivity");
+
+        // Nodes without the attribute never match, even criteria which accept an empty string
+        assertSameMatch(new UiSelector().description(""));
+        assertSameMatch(new UiSelector().descriptionMatches(".*"));
+        assertSameMatch(new UiSelector().descriptionContains(""));
+        assertSameMatch(new UiSelector().className(LinearLayout.class).text(""));
+        assertSameMatch(new UiSelector().className(LinearLayout.class).textMatches(".*"));
+        assertSameMatch(new UiSelector().className(TextView.class).resourceIdMatches(".*")
+                .instance(1));
+    }
+
+    @Test
+    public void testInstanceAndIndex() {
+        launchTestActivity("MainActivity");
+
+        for (int i = 0; i < 10; i++) {
+            assertSameMatch(new UiSelector().className(TextView.class).instance(i));
+            assertSameMatch(new UiSelector().className(LinearLayout.class).index(i));
+        }
+        assertSameMatch(new UiSelector().className(TextView.class).index(0).instance(2));
+    }
+
+    @Test
+    public void testChildAndParentSelectors() {
+        launchTestActivity("MainActivity");
+
+        assertSameMatch(new UiSelector().resourceIdMatches(".*nested_elements")
+                .childSelector(new UiSelector().className(TextView.class).instance(1)));
+        assertSameMatch(new UiSelector().className(LinearLayout.class)
+                .childSelector(new UiSelector().className(LinearLayout.class)
+                .childSelector(new UiSelector().textContains("level"))));
+        assertSameMatch(new UiSelector().className(ListView.class)
+                .childSelector(new UiSelector().index(2)));
+        assertSameMatch(new UiSelector().text("Second Level")
+                .fromParent(new UiSelector().className(LinearLayout.class)));
+        assertSameMatch(new UiSelector().text("Item1")
+                .fromParent(new UiSelector().className(TextView.class).instance(1)));
+        assertSameMatch(new UiSelector().text("Second Level")
+                .fromParent(new UiSelector().text("First Level")));
+    }
+
+    @Test
+    public void testContainerAndPatternSelectors() {
+        launchTestActivity("MainActivity");
+
+        UiSelector list = new UiSelector().className(ListView.class);
+        UiSelector item = new UiSelector().className(TextView.class);
+        assertSamePatternCount(UiSelector.patternBuilder(list, UiSelector.patternBuilder(item)));
+        for (int i = 0; i < 4; i++) {
+            assertSameMatch(UiSelector.patternBuilder(list,
+                    UiSelector.patternBuilder(item).instance(i)));
+        }
+
+        // Pattern and child selectors added by UiCollection.getChildByText()
+        UiSelector nested = new UiSelector().className(LinearLayout.class);
+        assertSamePatternCount(UiSelector.patternBuilder(nested,
+                UiSelector.patternBuilder(item)));
+        assertSameMatch(UiSelector.patternBuilder(nested,
+                UiSelector.patternBuilder(new UiSelector().className(LinearLayout.class))
+                .instance(1)).childSelector(new UiSelector().textStartsWith("third")));
+    }
+
+    @Test
+    public void testContainerSearch() {
+        launchTestActivity("MainActivity");
+
+        assertSameMatchInContainer(new UiSelector().className(ListView.class),
+                new UiSelector().text("Item2"));
+        assertSameMatchInContainer(new UiSelector().className(ListView.class),
+                new UiSelector().className(TextView.class).instance(1));
+        assertSameMatchInContainer(new UiSelector().resourceIdMatches(".*nested_elements"),
+                new UiSelector().className(LinearLayout.class)
+                .childSelector(new UiSelector().textContains("level").instance(1)));
+        assertSameMatchInContainer(new UiSelector().resourceIdMatches(".*nested_elements"),
+                new UiSelector().text("Sample text"));
+    }
+
+    @Test
+    public void testNestedLayouts() {
+        launchTestActivity("BySelectorTestHasChildActivity");
+
+        assertSameMatch(new UiSelector().className(LinearLayout.class).instance(2));
+        assertSameMatch(new UiSelector().className(RelativeLayout.class)
+                .childSelector(new UiSelector().className(TextView.class)));
+        assertSameMatch(new UiSelector().textContains("child2")
+                .fromParent(new UiSelector().index(0)));
+        assertSameMatch(new UiSelector().resourceIdMatches(".*toplevel[0-9]")
+                .childSelector(new UiSelector().className(TextView.class).instance(1)));
+        assertSamePatternCount(UiSelector.patternBuilder(
+                new UiSelector().resourceIdMatches(".*toplevel2"),
+                UiSelector.patternBuilder(new UiSelector().className(TextView.class))));
+    }
+
+    /** Returns the snapshot node of the active window root, as the snapshot search does. */
+    private UiNode getSnapshotRoot() {
+        AccessibilityNodeInfo root = mQueryController.getRootNode();
+        Assert.assertNotNull(root);
+        try {
+            UiNode node = mDevice.getHierarchySnapshot().getNode(root);
+            Assert.assertNotNull(node);
+            return node;
+        } finally {
+            root.recycle();
+        }
+    }
+
+    private void assertSameMatch(UiSelector selector) {
+        AccessibilityNodeInfo expected = mQueryController.findAccessibilityNodeInfo(selector);
+        HierarchySnapshot.Node actual =
+                (HierarchySnapshot.Node) selector.compile().findMatch(getSnapshotRoot());
+        try {
+            assertSameNode(selector, expected, actual);
+        } finally {
+            if (expected != null) {
+                expected.recycle();
+            }
+        }
+    }
+
+    private void assertSamePatternCount(UiSelector selector) {
+        Assert.assertEquals(selector.toString(), mQueryController.getPatternCount(selector),
+                selector.compile().getPatternCount(getSnapshotRoot()));
+    }
+
+    private void assertSameMatchInContainer(UiSelector containerSelector, UiSelector selector) {
+        AccessibilityNodeInfo container =
+                mQueryController.findAccessibilityNodeInfo(containerSelector);
+        Assert.assertNotNull(containerSelector.toString(), container);
+        try {
+            AccessibilityNodeInfo expected =
+                    mQueryController.findAccessibilityNodeInfo(selector, container);
+            HierarchySnapshot.Node containerNode = mDevice.getHierarchySnapshot().getNode(
+                    container);
+            Assert.assertNotNull(containerNode);
+            HierarchySnapshot.Node actual = (HierarchySnapshot.Node)
+                    selector.compile().findMatchInContainer(containerNode);
+            try {
+                assertSameNode(selector, expected, actual);
+            } finally {
+                if (expected != null) {
+                    expected.recycle();
+                }
+            }
+        } finally {
+            container.recycle();
+        }
+    }
+
+    private static void assertSameNode(UiSelector selector, AccessibilityNodeInfo expected,
+            HierarchySnapshot.Node actual) {
+        if (expected == null) {
+            Assert.assertNull(selector.toString(), actual);
+        } else {
+            Assert.assertNotNull(selector.toString(), actual);
+            Assert.assertEquals(selector.toString(), expected, actual.getInfo());
+        }
+    }
+}
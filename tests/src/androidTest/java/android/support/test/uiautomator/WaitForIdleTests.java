@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.test.uiautomator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that {@link UiDevice#waitForIdle()} still waits for screens started out of band, which
+ * uiautomator only learns about from their accessibility events, once the UI was found idle.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WaitForIdleTests {
+
+    private static final String TEST_APP = "android.support.test.uiautomator.testapp";
+
+    private UiDevice mDevice;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        mDevice.pressHome();
+        mDevice.wait(Until.gone(By.pkg(TEST_APP)), 5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDevice.pressHome();
+
+        // Wait for the activity to disappear
+        mDevice.wait(Until.gone(By.pkg(TEST_APP)), 5000);
+    }
+
+    @Test
+    public void testFindAfterContextLaunch() {
+        // Let the idle confirmation expire, as it does between the steps of most tests
+        mDevice.waitForIdle();
+        SystemClock.sleep(1000);
+
+        Context context = InstrumentationRegistry.getContext();
+        Intent intent = new Intent()
+                .setClassName(TEST_APP, String.format("%s.%s", TEST_APP, "MainActivity"))
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        context.startActivity(intent);
+
+        // exists() searches once, right after waiting for idle
+        Assert.assertTrue(mDevice.findObject(new UiSelector().text("Sample text")).exists());
+    }
+
+    @Test
+    public void testFindAfterShellLaunch() throws Exception {
+        Assume.assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+
+        // No wait between confirming idle and the launch
+        mDevice.waitForIdle();
+        mDevice.executeShellCommand(String.format("am start -W -n %s/.MainActivity", TEST_APP));
+
+        mDevice.waitForIdle();
+        Assert.assertNotNull(mDevice.findObject(By.text("Sample text")));
+    }
+}